@@ -0,0 +1,181 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds archives for exercising the extractors: well formed ones of different
+ * shapes, and hostile ones. Traversal names only climb one directory, so an
+ * extractor that follows them stays inside a sandbox directory one level up.
+ */
+public class ArchiveGenerator {
+
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int DOS_EPOCH = 0x00210000; // 1980-01-01 00:00
+
+    private ArchiveGenerator() {
+    }
+
+    public static void manyTiny(File file, int count, int size) throws IOException {
+        Random random = new Random(1);
+        try (ZipOutputStream out = open(file)) {
+            for (int i = 0; i < count; i++) {
+                out.putNextEntry(new ZipEntry("tiny" + i + ".txt"));
+                out.write(text(random, size));
+                out.closeEntry();
+            }
+        }
+    }
+
+    public static void oneHuge(File file, int size) throws IOException {
+        Random random = new Random(2);
+        try (ZipOutputStream out = open(file)) {
+            out.putNextEntry(new ZipEntry("huge.txt"));
+            for (int written = 0; written < size; written += 1 << 20) {
+                out.write(text(random, Math.min(1 << 20, size - written)));
+            }
+            out.closeEntry();
+        }
+    }
+
+    // directory entries come before their contents, parents before children
+    public static void nested(File file, int depth, int filesPerDirectory) throws IOException {
+        Random random = new Random(3);
+        try (ZipOutputStream out = open(file)) {
+            String path = "";
+            for (int level = 0; level < depth; level++) {
+                path += "level" + level + "/";
+                out.putNextEntry(new ZipEntry(path));
+                out.closeEntry();
+                for (int i = 0; i < filesPerDirectory; i++) {
+                    out.putNextEntry(new ZipEntry(path + "file" + i + ".txt"));
+                    out.write(text(random, 4096));
+                    out.closeEntry();
+                }
+            }
+        }
+    }
+
+    public static void traversal(File file) throws IOException {
+        try (ZipOutputStream out = open(file)) {
+            out.putNextEntry(new ZipEntry("harmless.txt"));
+            out.write("harmless\n".getBytes(StandardCharsets.US_ASCII));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("../escaped.txt"));
+            out.write("written outside the extraction directory\n".getBytes(StandardCharsets.US_ASCII));
+            out.closeEntry();
+        }
+    }
+
+    // entries of zeros, each stored once
+    public static void classicBomb(File file, int entries, int entrySize) throws IOException {
+        writeBomb(file, entries, entries, entrySize, false);
+    }
+
+    // One entry named by every record of the central directory. The entry is
+    // text, so each record on its own looks like an ordinary file; only the
+    // overlap gives the archive away.
+    public static void overlappingBomb(File file, int entries, int entrySize) throws IOException {
+        writeBomb(file, 1, entries, entrySize, true);
+    }
+
+    private static ZipOutputStream open(File file) throws IOException {
+        return new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    // the central record i points at the local entry i % copies
+    private static void writeBomb(File file, int copies, int entries, int entrySize, boolean text)
+            throws IOException {
+        Random random = new Random(4);
+        byte[] input = new byte[64 * 1024];
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        byte[] output = new byte[64 * 1024];
+        try {
+            for (int fed = 0; fed < entrySize; fed += input.length) {
+                int length = Math.min(input.length, entrySize - fed);
+                if (text) {
+                    input = text(random, input.length);
+                }
+                crc.update(input, 0, length);
+                deflater.setInput(input, 0, length);
+                while (!deflater.needsInput()) {
+                    deflated.write(output, 0, deflater.deflate(output));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflated.write(output, 0, deflater.deflate(output));
+            }
+        } finally {
+            deflater.end();
+        }
+        byte[] data = deflated.toByteArray();
+
+        long[] offsets = new long[copies];
+        long position = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < copies; i++) {
+                offsets[i] = position;
+                byte[] name = ("bomb" + i + ".bin").getBytes(StandardCharsets.US_ASCII);
+                ByteBuffer header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(LOCSIG).putShort((short) 20).putShort((short) 0).putShort((short) 8)
+                        .putInt(DOS_EPOCH).putInt((int) crc.getValue()).putInt(data.length).putInt(entrySize)
+                        .putShort((short) name.length).putShort((short) 0).put(name);
+                out.write(header.array());
+                out.write(data);
+                position += header.capacity() + data.length;
+            }
+            long start = position;
+            for (int i = 0; i < entries; i++) {
+                byte[] name = ("bomb" + i + ".bin").getBytes(StandardCharsets.US_ASCII);
+                ByteBuffer record = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+                record.putInt(CENSIG).putShort((short) 20).putShort((short) 20).putShort((short) 0)
+                        .putShort((short) 8).putInt(DOS_EPOCH).putInt((int) crc.getValue()).putInt(data.length)
+                        .putInt(entrySize).putShort((short) name.length).putShort((short) 0).putShort((short) 0)
+                        .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) offsets[i % copies])
+                        .put(name);
+                out.write(record.array());
+                position += record.capacity();
+            }
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(ENDSIG).putShort((short) 0).putShort((short) 0).putShort((short) entries)
+                    .putShort((short) entries).putInt((int) (position - start)).putInt((int) start)
+                    .putShort((short) 0);
+            out.write(end.array());
+        }
+    }
+
+    // words from a small vocabulary, which deflate about as well as log files
+    static byte[] text(Random random, int size) {
+        String[] words = { "secure", "coding", "input", "validation", "archive", "entry", "buffer", "limit",
+                "stream", "error", "2024-01-01", "INFO", "WARN", "user", "request", "\n" };
+        byte[] data = new byte[size];
+        int i = 0;
+        while (i < size) {
+            byte[] word = words[random.nextInt(words.length)].getBytes(StandardCharsets.US_ASCII);
+            for (int j = 0; j < word.length && i < size; j++) {
+                data[i++] = word[j];
+            }
+            if (i < size) {
+                data[i++] = ' ';
+            }
+        }
+        return data;
+    }
+}
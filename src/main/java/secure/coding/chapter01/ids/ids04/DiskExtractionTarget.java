@@ -0,0 +1,47 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes entries below a directory, checking every name with
+ * validateFilename, and keeps the size and SHA-256 of each file.
+ */
+public class DiskExtractionTarget implements ExtractionTarget {
+
+    private final String intendedDir;
+    private final ExtractionWriter writer;
+    private final Map<String, ExtractionWriter.Result> results = new LinkedHashMap<>();
+
+    public DiskExtractionTarget(String intendedDir, ExtractionWriter writer) {
+        this.intendedDir = intendedDir;
+        this.writer = writer;
+    }
+
+    @Override
+    public void directory(String name) throws IOException {
+        new File(validate(name)).mkdirs();
+    }
+
+    @Override
+    public void entry(String name, InputStream in) throws IOException {
+        String path = validate(name);
+        File parent = new File(path).getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        results.put(name, writer.write(in, path, -1, null));
+    }
+
+    public Map<String, ExtractionWriter.Result> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    private String validate(String name) throws IOException {
+        return ExtractZipSecure.validateFilename(new File(intendedDir, name).getPath(), intendedDir);
+    }
+}
@@ -5,7 +5,9 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -15,7 +17,7 @@ public class ExtractZipSecure {
     private static final int TOOBIG = 0x6400000; // max size of unzipped data, 100MB
     private static final int TOOMANY= 1024;     // max number of files
 
-    private String validateFilename(String filename, String intendedDir)
+    static String validateFilename(String filename, String intendedDir)
             throws java.io.IOException {
         File f = new File(filename);
         String canonicalPath = f.getCanonicalPath();
@@ -31,8 +33,13 @@ public class ExtractZipSecure {
     }
 
     public final void unzip(String filename) throws IOException {
+        // Reject archives whose central directory already breaks the limits;
+        // the checks below still apply when the directory lies, and they are
+        // the only ones for an archive that has no central directory
+        new ZipPreScanner(TOOBIG, TOOMANY, ZipPreScanner.DEFAULT_MAX_RATIO).verifyIfIndexed(filename);
         FileInputStream fis = new FileInputStream(filename);
-        ZipInputStream zis = new ZipInputStream(new BufferedInputStream(fis));
+        ZipInputStream zis = new GuardedZipInputStream(new BufferedInputStream(fis), TOOBIG, TOOBIG,
+                ZipPreScanner.DEFAULT_MAX_RATIO);
         ZipEntry entry;
         int entries = 0;
         long total = 0;
@@ -70,4 +77,37 @@ public class ExtractZipSecure {
             zis.close();
         }
     }
+
+    /**
+     * Extracts into the given target under the same limits as unzip(String).
+     * The target sees each entry as a stream that it cannot close.
+     */
+    public final void unzip(String filename, ExtractionTarget target) throws IOException {
+        new ZipPreScanner(TOOBIG, TOOMANY, ZipPreScanner.DEFAULT_MAX_RATIO).verifyIfIndexed(filename);
+        try (ZipInputStream zis = new GuardedZipInputStream(new BufferedInputStream(new FileInputStream(filename)),
+                TOOBIG, TOOBIG, ZipPreScanner.DEFAULT_MAX_RATIO)) {
+            InputStream entryStream = new FilterInputStream(zis) {
+                @Override
+                public void close() {
+                }
+            };
+            ZipEntry entry;
+            int entries = 0;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (!ZipPreScanner.isSafeName(entry.getName())) {
+                    throw new IllegalStateException("File is outside extraction target directory.");
+                }
+                if (entry.isDirectory()) {
+                    target.directory(entry.getName());
+                    continue;
+                }
+                entries++;
+                if (entries > TOOMANY) {
+                    throw new IllegalStateException("Too many files to unzip.");
+                }
+                target.entry(entry.getName(), entryStream);
+                zis.closeEntry();
+            }
+        }
+    }
 }
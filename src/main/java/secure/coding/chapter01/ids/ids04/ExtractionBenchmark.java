@@ -0,0 +1,250 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every extractor of this package over generated archives and reports
+ * throughput, peak memory and how fast hostile archives are rejected.
+ *
+ * Every extraction runs in a child JVM whose working directory is a fresh
+ * directory, since ExtractZip, ExtractZip2 and ExtractZipSecure write relative
+ * to it. This keeps the peak resident set (VmHWM, Linux only) of one run apart
+ * from the others, and lets the parent kill an extractor that runs away. The
+ * child times only the extraction; the parent then counts what was written,
+ * including anything that escaped into the sandbox above the directory.
+ *
+ *   java ExtractionBenchmark [work directory]
+ */
+public class ExtractionBenchmark {
+
+    private static final String[] MODES = { "ExtractZip", "ExtractZip2", "ExtractZipSecure", "ParallelExtractZip",
+            "MemoryTarget" };
+    private static final long TIMEOUT_SECONDS = 120;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--child")) {
+            child(args[1], args[2]);
+            return;
+        }
+        File work = Files.createTempDirectory(new File(args.length > 0 ? args[0]
+                : System.getProperty("java.io.tmpdir")).toPath(), "extraction").toFile();
+        try {
+            File archives = new File(work, "archives");
+            archives.mkdirs();
+            List<File> files = generate(archives);
+            System.out.format("%-18s %-20s %-9s %9s %9s %11s %9s %8s  %s%n", "archive", "mode", "outcome", "ms",
+                    "MB/s", "entries/s", "VmHWM MB", "escaped", "detail");
+            for (File archive : files) {
+                for (String mode : MODES) {
+                    run(archive, mode, new File(work, "run"), new File(work, "child.out"));
+                }
+            }
+        } finally {
+            delete(work);
+        }
+    }
+
+    private static List<File> generate(File dir) throws IOException {
+        List<File> files = new ArrayList<>();
+        File file;
+        ArchiveGenerator.manyTiny(file = new File(dir, "many-tiny.zip"), 1000, 1024);
+        files.add(file);
+        ArchiveGenerator.oneHuge(file = new File(dir, "one-huge.zip"), 96 * 1024 * 1024);
+        files.add(file);
+        ArchiveGenerator.nested(file = new File(dir, "nested.zip"), 16, 8);
+        files.add(file);
+        ArchiveGenerator.traversal(file = new File(dir, "traversal.zip"));
+        files.add(file);
+        ArchiveGenerator.classicBomb(file = new File(dir, "classic-bomb.zip"), 4, 128 * 1024 * 1024);
+        files.add(file);
+        // kept under TOOBIG in total, so that only the overlap is wrong
+        ArchiveGenerator.overlappingBomb(file = new File(dir, "overlap-bomb.zip"), 24, 4 * 1024 * 1024);
+        files.add(file);
+        return files;
+    }
+
+    private static void run(File archive, String mode, File sandbox, File output)
+            throws IOException, InterruptedException {
+        File target = new File(sandbox, "target");
+        target.mkdirs();
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        Process process = new ProcessBuilder(java, "-cp", absoluteClassPath(),
+                ExtractionBenchmark.class.getName(), "--child", mode, archive.getAbsolutePath())
+                .directory(target).redirectErrorStream(true).redirectOutput(output).start();
+        process.getOutputStream().close();
+        String result = null;
+        String last = "";
+        if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            result = "timeout " + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS) + " -1 -1 -1 killed after "
+                    + TIMEOUT_SECONDS + "s";
+        } else {
+            for (String line : Files.readAllLines(output.toPath(), StandardCharsets.UTF_8)) {
+                if (line.startsWith("RESULT ")) {
+                    result = line.substring(7);
+                }
+                last = line;
+            }
+        }
+        if (result == null) {
+            result = "crashed 0 -1 -1 -1 exit " + process.exitValue() + ": " + last;
+        }
+        String[] fields = result.split(" ", 6);
+        long nanos = Long.parseLong(fields[1]);
+        long peak = Long.parseLong(fields[2]);
+        long[] inside = count(target);
+        long[] all = count(sandbox);
+        long escaped = all[0] - inside[0];
+        if (Long.parseLong(fields[3]) >= 0) {
+            // kept in memory by the child
+            inside[0] = Long.parseLong(fields[3]);
+            inside[1] = Long.parseLong(fields[4]);
+        }
+        double seconds = Math.max(nanos, 1) / 1e9;
+        System.out.format("%-18s %-20s %-9s %9.1f %9.1f %11.0f %9s %8d  %s%n", archive.getName(), mode, fields[0],
+                nanos / 1e6, inside[1] / (double) (1 << 20) / seconds, inside[0] / seconds,
+                peak < 0 ? "n/a" : String.format("%.1f", peak / 1024.0), escaped,
+                fields.length > 5 ? fields[5] : "");
+        delete(sandbox);
+    }
+
+    // the child runs in another directory
+    private static String absoluteClassPath() {
+        StringBuilder path = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (path.length() > 0) {
+                path.append(File.pathSeparator);
+            }
+            path.append(new File(entry).getAbsolutePath());
+        }
+        return path.toString();
+    }
+
+    // Runs one extraction and prints "RESULT outcome nanos vmhwm-kB entries bytes
+    // detail"; entries and bytes are -1 when they are to be counted on disk.
+    private static void child(String mode, String archive) throws Exception {
+        PrintStream result = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        String outcome = "ok";
+        String detail = "";
+        long[] extracted = { -1, -1 };
+        long start = System.nanoTime();
+        try {
+            extract(mode, archive, extracted);
+        } catch (IllegalStateException e) {
+            outcome = "rejected";
+            detail = e.getMessage();
+        } catch (Exception e) {
+            outcome = "failed";
+            detail = e.toString();
+        }
+        long nanos = System.nanoTime() - start;
+        result.println("RESULT " + outcome + " " + nanos + " " + peakResidentKb() + " " + extracted[0] + " "
+                + extracted[1] + " " + detail);
+        result.flush();
+    }
+
+    private static void extract(String mode, String archive, long[] extracted) throws Exception {
+        switch (mode) {
+        case "ExtractZip":
+            new ExtractZip().unzip(archive);
+            break;
+        case "ExtractZip2":
+            new ExtractZip2().unzip(archive);
+            break;
+        case "ExtractZipSecure":
+            new ExtractZipSecure().unzip(archive);
+            break;
+        case "ParallelExtractZip":
+            ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            try {
+                new ParallelExtractZip(pool).unzip(archive);
+            } finally {
+                pool.shutdownNow();
+            }
+            break;
+        case "MemoryTarget":
+            // held in memory only; nothing is written to the directory
+            try (MemoryExtractionTarget target = new MemoryExtractionTarget(new DirectBufferPool(64 * 1024, 256),
+                    64L * 1024 * 1024)) {
+                extracted[0] = 0;
+                extracted[1] = 0;
+                new ExtractZipSecure().unzip(archive, target);
+                for (String name : target.names()) {
+                    extracted[0]++;
+                    extracted[1] += target.size(name);
+                }
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    private static long peakResidentKb() {
+        File status = new File("/proc/self/status");
+        if (!status.exists()) {
+            return -1;
+        }
+        try (BufferedReader in = new BufferedReader(new FileReader(status))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    // files and bytes below the directory
+    private static long[] count(File dir) {
+        long[] totals = new long[2];
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    long[] nested = count(file);
+                    totals[0] += nested[0];
+                    totals[1] += nested[1];
+                } else {
+                    totals[0]++;
+                    totals[1] += file.length();
+                }
+            }
+        }
+        return totals;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
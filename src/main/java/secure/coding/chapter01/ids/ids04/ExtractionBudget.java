@@ -0,0 +1,71 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TOOBIG and TOOMANY limits of ExtractZipSecure, shared by every thread
+ * extracting the same archive. Bytes are reserved before they are written, so
+ * the limit holds however the work is split between threads.
+ */
+public class ExtractionBudget {
+
+    private final long maxBytes;
+    private final int maxEntries;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger entries = new AtomicInteger();
+
+    public ExtractionBudget(long maxBytes, int maxEntries) {
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+    }
+
+    public void addEntry() {
+        if (entries.incrementAndGet() > maxEntries) {
+            throw new IllegalStateException("Too many files to unzip.");
+        }
+    }
+
+    public void addBytes(long count) {
+        if (bytes.addAndGet(count) > maxBytes) {
+            throw new IllegalStateException("File being unzipped is too big.");
+        }
+    }
+
+    /**
+     * Adds count bytes only if they fit, for a reservation that may be refused
+     * without failing the extraction.
+     */
+    public boolean tryAddBytes(long count) {
+        while (true) {
+            long current = bytes.get();
+            if (count > maxBytes - current) {
+                return false;
+            }
+            if (bytes.compareAndSet(current, current + count)) {
+                return true;
+            }
+        }
+    }
+
+    // gives back bytes that were reserved but not written
+    public void releaseBytes(long count) {
+        bytes.addAndGet(-count);
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public int getEntries() {
+        return entries.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+}
@@ -0,0 +1,22 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where ExtractZipSecure puts the entries of an archive. A target may write
+ * them to disk, keep them in memory, or hand them straight to an analyzer.
+ *
+ * Names reach the target as they appear in the archive, after absolute paths
+ * and ".." segments have been rejected.
+ */
+public interface ExtractionTarget {
+
+    void directory(String name) throws IOException;
+
+    /**
+     * Consumes one entry. The stream ends with the entry and fails as soon as
+     * a limit is exceeded; whatever the target leaves unread is skipped.
+     */
+    void entry(String name, InputStream in) throws IOException;
+}
@@ -0,0 +1,155 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Writes extracted entries through large pooled direct buffers and a
+ * FileChannel, computing the SHA-256 of each entry in the same pass.
+ *
+ * The extractors in this package copy through a 512 byte array and a 512 byte
+ * BufferedOutputStream, which costs a write system call per 512 bytes. Here
+ * each write moves a whole buffer of 64KB to 1MB.
+ *
+ * When the size of an entry is known the file can be extended to that length
+ * before the data is written. Java has no portable fallocate, so this does not
+ * reserve blocks on filesystems that create sparse files; it does let the
+ * filesystem see the final size up front. The declared size comes from the
+ * archive and cannot be trusted, so it is first reserved from the budget, and
+ * the file is not extended if the reservation does not fit. The file is cut
+ * back to the bytes actually written, and the unused part of the reservation
+ * given back, whether the copy succeeds or fails.
+ */
+public class ExtractionWriter {
+
+    public static final int MIN_BUFFER = 64 * 1024;
+    public static final int MAX_BUFFER = 1024 * 1024;
+
+    private final DirectBufferPool buffers;
+    private final boolean preallocate;
+
+    public ExtractionWriter(int bufferSize, int maxPooledBuffers, boolean preallocate) {
+        if (bufferSize < MIN_BUFFER || bufferSize > MAX_BUFFER) {
+            throw new IllegalArgumentException("Buffer size must be between 64KB and 1MB: " + bufferSize);
+        }
+        this.buffers = new DirectBufferPool(bufferSize, maxPooledBuffers);
+        this.preallocate = preallocate;
+    }
+
+    public static final class Result {
+        private final long size;
+        private final byte[] sha256;
+
+        Result(long size, byte[] sha256) {
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public byte[] getSha256() {
+            return sha256.clone();
+        }
+
+        public String getSha256Hex() {
+            StringBuilder sb = new StringBuilder(sha256.length * 2);
+            for (byte b : sha256) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Copies the stream to the file, replacing any previous content.
+     *
+     * @param sizeHint
+     *            the declared size of the entry, or -1 when unknown
+     * @param budget
+     *            charged before every write, or null for no limit, in which
+     *            case the file is extended to any declared size
+     */
+    public Result write(InputStream in, String filename, long sizeHint, ExtractionBudget budget)
+            throws IOException {
+        MessageDigest sha256 = newSha256();
+        ReadableByteChannel source = Channels.newChannel(in);
+        ByteBuffer buffer = buffers.acquire();
+        long written = 0;
+        try (FileChannel out = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // bytes charged to the budget ahead of the data, and the length the file was extended to
+            long reserved = 0;
+            if (preallocate && sizeHint > 0 && (budget == null || budget.tryAddBytes(sizeHint))) {
+                reserved = sizeHint;
+            }
+            boolean complete = false;
+            try {
+                if (reserved > 0) {
+                    out.write(ByteBuffer.wrap(new byte[1]), reserved - 1);
+                }
+                boolean eof = false;
+                while (!eof) {
+                    // fill the whole buffer so every write moves as much as possible
+                    while (buffer.hasRemaining()) {
+                        if (source.read(buffer) < 0) {
+                            eof = true;
+                            break;
+                        }
+                    }
+                    buffer.flip();
+                    // only the bytes past the reservation are charged
+                    long excess = Math.max(written + buffer.remaining(), reserved) - Math.max(written, reserved);
+                    if (budget != null && excess > 0) {
+                        budget.addBytes(excess);
+                    }
+                    sha256.update(buffer);
+                    buffer.rewind();
+                    while (buffer.hasRemaining()) {
+                        written += out.write(buffer, written);
+                    }
+                    buffer.clear();
+                }
+                complete = true;
+            } finally {
+                if (reserved > written) {
+                    if (budget != null) {
+                        budget.releaseBytes(reserved - written);
+                    }
+                    truncate(out, written, complete);
+                }
+            }
+        } finally {
+            buffers.release(buffer);
+        }
+        return new Result(written, sha256.digest());
+    }
+
+    // on failure the exception of the copy matters more than one from the truncation
+    private static void truncate(FileChannel out, long size, boolean complete) throws IOException {
+        try {
+            out.truncate(size);
+        } catch (IOException e) {
+            if (complete) {
+                throw e;
+            }
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+        }
+    }
+}
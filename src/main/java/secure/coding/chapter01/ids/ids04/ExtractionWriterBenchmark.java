@@ -0,0 +1,143 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares the 512 byte stream copy of ExtractZip with ExtractionWriter at
+ * several buffer sizes. Each argument is a directory to extract into, for
+ * example one on tmpfs and one on ext4:
+ *
+ *   java ExtractionWriterBenchmark /dev/shm /var/tmp
+ *
+ * Every round extracts the same archive of 16 entries of 8MB each; the best
+ * round of each mode is reported. ExtractionWriter always hashes, so the
+ * stream copy is also measured with a SHA-256 of every entry.
+ */
+public class ExtractionWriterBenchmark {
+
+    private static final int ENTRIES = 16;
+    private static final int ENTRY_SIZE = 8 * 1024 * 1024;
+    private static final int ROUNDS = 3;
+    private static final int STREAM_BUFFER = 512;
+
+    public static void main(String[] args) throws IOException {
+        String[] targets = args.length > 0 ? args : new String[] { System.getProperty("java.io.tmpdir") };
+        File archive = File.createTempFile("extraction", ".zip");
+        archive.deleteOnExit();
+        writeArchive(archive);
+        System.out.format("archive: %d entries, %d MB uncompressed, %d KB compressed%n", ENTRIES,
+                (long) ENTRIES * ENTRY_SIZE >> 20, archive.length() >> 10);
+
+        for (String target : targets) {
+            System.out.format("%ntarget: %s%n", target);
+            report("stream 512B", best(archive, target, null, false));
+            report("stream 512B sha256", best(archive, target, null, true));
+            for (int size : new int[] { 64 * 1024, 256 * 1024, 1024 * 1024 }) {
+                report("channel " + (size >> 10) + "KB",
+                        best(archive, target, new ExtractionWriter(size, 1, false), true));
+                report("channel " + (size >> 10) + "KB prealloc",
+                        best(archive, target, new ExtractionWriter(size, 1, true), true));
+            }
+        }
+    }
+
+    private static void report(String mode, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.format("  %-24s %8.1f ms %8.1f MB/s%n", mode, nanos / 1e6,
+                (double) ENTRIES * ENTRY_SIZE / (1 << 20) / seconds);
+    }
+
+    private static long best(File archive, String target, ExtractionWriter writer, boolean hash)
+            throws IOException {
+        File dir = new File(target, "extraction-benchmark");
+        dir.mkdirs();
+        long best = Long.MAX_VALUE;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                extract(archive, dir, writer, hash);
+                best = Math.min(best, System.nanoTime() - start);
+                clear(dir);
+            }
+        } finally {
+            clear(dir);
+            dir.delete();
+        }
+        return best;
+    }
+
+    private static void extract(File archive, File dir, ExtractionWriter writer, boolean hash)
+            throws IOException {
+        try (ZipFile zip = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = new File(dir, entry.getName()).getPath();
+                try (InputStream in = zip.getInputStream(entry)) {
+                    if (writer != null) {
+                        writer.write(in, name, entry.getSize(), null);
+                    } else {
+                        copy(in, name, hash);
+                    }
+                }
+            }
+        }
+    }
+
+    // the copy loop of ExtractZip
+    private static void copy(InputStream in, String name, boolean hash) throws IOException {
+        byte[] data = new byte[STREAM_BUFFER];
+        OutputStream out = new FileOutputStream(name);
+        if (hash) {
+            try {
+                out = new DigestOutputStream(out, MessageDigest.getInstance("SHA-256"));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        try (BufferedOutputStream dest = new BufferedOutputStream(out, STREAM_BUFFER)) {
+            int count;
+            while ((count = in.read(data, 0, STREAM_BUFFER)) != -1) {
+                dest.write(data, 0, count);
+            }
+        }
+    }
+
+    private static void clear(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    // text-like content that deflates to a little over half its size
+    private static void writeArchive(File archive) throws IOException {
+        Random random = new Random(42);
+        byte[] data = new byte[ENTRY_SIZE];
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < ENTRIES; i++) {
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte) ('a' + random.nextInt(16));
+                }
+                out.putNextEntry(new ZipEntry("entry" + i + ".txt"));
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+    }
+}
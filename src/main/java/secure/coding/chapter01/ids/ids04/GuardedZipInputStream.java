@@ -0,0 +1,138 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A ZipInputStream that compares the compressed bytes it consumes with the
+ * uncompressed bytes it produces, for each entry and for the whole archive.
+ *
+ * It does not rely on the sizes declared in the archive. A read that would
+ * take an entry or the archive past its absolute limit fails before the bytes
+ * are returned, and a read that takes the compression ratio past the limit
+ * fails as soon as it happens, so at most one buffer is inflated beyond the
+ * point where the archive is known to be a bomb.
+ */
+public class GuardedZipInputStream extends ZipInputStream {
+
+    private static final AtomicLong rejections = new AtomicLong();
+
+    private final CountingInputStream source;
+    private final long maxEntrySize;
+    private final long maxTotalSize;
+    private final double maxRatio;
+    private long entryStart;
+    private long entrySize;
+    private long totalSize;
+
+    public GuardedZipInputStream(InputStream in, long maxEntrySize, long maxTotalSize, double maxRatio) {
+        this(new CountingInputStream(in), maxEntrySize, maxTotalSize, maxRatio);
+    }
+
+    private GuardedZipInputStream(CountingInputStream source, long maxEntrySize, long maxTotalSize,
+            double maxRatio) {
+        super(source);
+        this.source = source;
+        this.maxEntrySize = maxEntrySize;
+        this.maxTotalSize = maxTotalSize;
+        this.maxRatio = maxRatio;
+    }
+
+    // archives rejected by any GuardedZipInputStream
+    public static long getRejections() {
+        return rejections.get();
+    }
+
+    @Override
+    public ZipEntry getNextEntry() throws IOException {
+        ZipEntry entry = super.getNextEntry();
+        entryStart = source.count;
+        entrySize = 0;
+        return entry;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        // ask for no more than one byte past the nearest limit
+        long allowed = Math.min(maxEntrySize - entrySize, maxTotalSize - totalSize) + 1;
+        int count = super.read(b, off, (int) Math.min(len, Math.max(allowed, 1)));
+        if (count > 0) {
+            entrySize += count;
+            totalSize += count;
+            check();
+        }
+        return count;
+    }
+
+    public long getEntrySize() {
+        return entrySize;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    // compressed bytes read from the underlying stream, headers included
+    public long getCompressedSize() {
+        return source.count;
+    }
+
+    private void check() {
+        if (entrySize > maxEntrySize) {
+            reject("File being unzipped is too big.");
+        }
+        if (totalSize > maxTotalSize) {
+            reject("File being unzipped is too big.");
+        }
+        // the inflater reads ahead, so the ratio is only judged on larger outputs
+        long entryCompressed = Math.max(source.count - entryStart, 1);
+        if (entrySize >= ZipPreScanner.MIN_RATIO_SIZE && entrySize > maxRatio * entryCompressed) {
+            reject("Suspicious compression ratio while unzipping.");
+        }
+        if (totalSize >= ZipPreScanner.MIN_RATIO_SIZE && totalSize > maxRatio * Math.max(source.count, 1)) {
+            reject("Suspicious compression ratio while unzipping.");
+        }
+    }
+
+    private static void reject(String message) {
+        rejections.incrementAndGet();
+        throw new IllegalStateException(message);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
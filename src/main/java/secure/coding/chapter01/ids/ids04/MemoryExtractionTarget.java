@@ -0,0 +1,257 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps extracted entries in pooled buffers so an archive can be scanned
+ * without writing it to disk. An entry that would take the buffers in use
+ * past the memory limit spills to a file in a temporary directory that only
+ * the owner can access.
+ *
+ * Directories are not recorded. Closing the target returns the buffers to the
+ * pool and deletes the spilled files.
+ */
+public class MemoryExtractionTarget implements ExtractionTarget, Closeable {
+
+    private final DirectBufferPool buffers;
+    private final long memoryLimit;
+    private final Map<String, Stored> entries = new LinkedHashMap<>();
+    private long memoryUsed;
+    private Path spillDir;
+
+    public MemoryExtractionTarget(DirectBufferPool buffers, long memoryLimit) {
+        this.buffers = buffers;
+        this.memoryLimit = memoryLimit;
+    }
+
+    private static final class Stored {
+        final List<ByteBuffer> chunks;
+        final Path file;
+        final long size;
+
+        Stored(List<ByteBuffer> chunks, Path file, long size) {
+            this.chunks = chunks;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    @Override
+    public void directory(String name) {
+    }
+
+    @Override
+    public void entry(String name, InputStream in) throws IOException {
+        // the last entry with a repeated name wins, as on disk
+        release(entries.remove(name));
+        ReadableByteChannel source = Channels.newChannel(in);
+        List<ByteBuffer> chunks = new ArrayList<>();
+        long size = 0;
+        boolean stored = false;
+        try {
+            while (true) {
+                ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+                if (chunk == null || !chunk.hasRemaining()) {
+                    if (memoryUsed + buffers.getBufferSize() > memoryLimit) {
+                        entries.put(name, spill(chunks, source, size));
+                        stored = true;
+                        return;
+                    }
+                    chunk = buffers.acquire();
+                    chunks.add(chunk);
+                    memoryUsed += chunk.capacity();
+                }
+                int count = source.read(chunk);
+                if (count < 0) {
+                    break;
+                }
+                size += count;
+            }
+            for (ByteBuffer chunk : chunks) {
+                chunk.flip();
+            }
+            entries.put(name, new Stored(chunks, null, size));
+            stored = true;
+        } finally {
+            if (!stored) {
+                release(new Stored(chunks, null, size));
+            }
+        }
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public long size(String name) {
+        return stored(name).size;
+    }
+
+    public boolean isSpilled(String name) {
+        return stored(name).file != null;
+    }
+
+    public InputStream open(String name) throws IOException {
+        Stored stored = stored(name);
+        if (stored.file != null) {
+            return Files.newInputStream(stored.file);
+        }
+        return new ChunkInputStream(stored.chunks);
+    }
+
+    // replays the stored entries, for example into an analyzer
+    public void forEach(ExtractionTarget consumer) throws IOException {
+        for (String name : entries.keySet()) {
+            try (InputStream in = open(name)) {
+                consumer.entry(name, in);
+            }
+        }
+    }
+
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Stored stored : entries.values()) {
+            release(stored);
+        }
+        entries.clear();
+        if (spillDir != null) {
+            Files.deleteIfExists(spillDir);
+            spillDir = null;
+        }
+    }
+
+    private Stored stored(String name) {
+        Stored stored = entries.get(name);
+        if (stored == null) {
+            throw new IllegalArgumentException("No such entry: " + name);
+        }
+        return stored;
+    }
+
+    private Stored spill(List<ByteBuffer> chunks, ReadableByteChannel source, long size) throws IOException {
+        Path file = Files.createTempFile(spillDirectory(), "entry", ".tmp");
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (ByteBuffer chunk : chunks) {
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+            }
+            ByteBuffer chunk = chunks.isEmpty() ? ByteBuffer.allocate(buffers.getBufferSize()) : chunks.get(0);
+            chunk.clear();
+            int count;
+            while ((count = source.read(chunk)) >= 0) {
+                size += count;
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                chunk.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        } finally {
+            release(new Stored(chunks, null, 0));
+        }
+        return new Stored(null, file, size);
+    }
+
+    private Path spillDirectory() throws IOException {
+        if (spillDir == null) {
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                spillDir = Files.createTempDirectory("extract",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                spillDir = Files.createTempDirectory("extract");
+                File dir = spillDir.toFile();
+                dir.setReadable(false, false);
+                dir.setWritable(false, false);
+                dir.setExecutable(false, false);
+                dir.setReadable(true, true);
+                dir.setWritable(true, true);
+                dir.setExecutable(true, true);
+            }
+        }
+        return spillDir;
+    }
+
+    private void release(Stored stored) throws IOException {
+        if (stored == null) {
+            return;
+        }
+        if (stored.chunks != null) {
+            for (ByteBuffer chunk : stored.chunks) {
+                memoryUsed -= chunk.capacity();
+                buffers.release(chunk);
+            }
+            stored.chunks.clear();
+        }
+        if (stored.file != null) {
+            Files.deleteIfExists(stored.file);
+        }
+    }
+
+    private static final class ChunkInputStream extends InputStream {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private int current;
+
+        ChunkInputStream(List<ByteBuffer> chunks) {
+            for (ByteBuffer chunk : chunks) {
+                this.chunks.add(chunk.duplicate());
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer chunk = next();
+            return chunk == null ? -1 : chunk.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer chunk = next();
+            if (chunk == null) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.remaining());
+            chunk.get(b, off, count);
+            return count;
+        }
+
+        private ByteBuffer next() {
+            while (current < chunks.size()) {
+                if (chunks.get(current).hasRemaining()) {
+                    return chunks.get(current);
+                }
+                current++;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts the entries of an archive concurrently. ZipFile reads the central
+ * directory, so every entry can be inflated independently on the given pool.
+ * The limits of ExtractZipSecure are enforced through one ExtractionBudget for
+ * the whole archive, and names are checked with the same validateFilename.
+ * Entries are written by an ExtractionWriter, whose buffers are shared by the
+ * tasks.
+ */
+public class ParallelExtractZip {
+
+    private static final int BUFFER = 64 * 1024;
+    private static final int TOOBIG = 0x6400000; // max size of unzipped data, 100MB
+    private static final int TOOMANY = 1024;     // max number of files
+
+    private final ExecutorService pool;
+    private final ExtractionWriter writer;
+
+    public ParallelExtractZip(ExecutorService pool) {
+        this(pool, new ExtractionWriter(BUFFER, Runtime.getRuntime().availableProcessors(), true));
+    }
+
+    public ParallelExtractZip(ExecutorService pool, ExtractionWriter writer) {
+        this.pool = pool;
+        this.writer = writer;
+    }
+
+    public final void unzip(String filename) throws IOException {
+        unzip(filename, ".");
+    }
+
+    public final void unzip(String filename, String intendedDir) throws IOException {
+        new ZipPreScanner(TOOBIG, TOOMANY, ZipPreScanner.DEFAULT_MAX_RATIO).verify(filename);
+        ExtractionBudget budget = new ExtractionBudget(TOOBIG, TOOMANY);
+        try (ZipFile zip = new ZipFile(filename)) {
+            // Validate every name and create the directories before any entry is
+            // written. When a name repeats, the last entry wins, as it does when
+            // the entries are extracted one after another.
+            Map<String, ZipEntry> files = new LinkedHashMap<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = ExtractZipSecure.validateFilename(new File(intendedDir, entry.getName()).getPath(),
+                        intendedDir);
+                if (entry.isDirectory()) {
+                    new File(name).mkdirs();
+                    continue;
+                }
+                budget.addEntry();
+                File parent = new File(name).getParentFile();
+                if (parent != null) {
+                    parent.mkdirs();
+                }
+                files.remove(name);
+                files.put(name, entry);
+            }
+
+            Extraction extraction = new Extraction(files.size());
+            for (Map.Entry<String, ZipEntry> file : files.entrySet()) {
+                if (extraction.stopped.get()) {
+                    extraction.finished.countDown();
+                    continue;
+                }
+                try {
+                    pool.execute(extractTask(zip, file.getValue(), file.getKey(), budget, extraction));
+                } catch (RejectedExecutionException e) {
+                    extraction.fail(e);
+                    extraction.finished.countDown();
+                }
+            }
+            extraction.awaitAll();
+        }
+    }
+
+    private Runnable extractTask(final ZipFile zip, final ZipEntry entry, final String name,
+            final ExtractionBudget budget, final Extraction extraction) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!extraction.stopped.get()) {
+                        try (InputStream in = new StoppableInputStream(zip.getInputStream(entry), extraction.stopped)) {
+                            writer.write(in, name, entry.getSize(), budget);
+                        }
+                    }
+                } catch (Throwable t) {
+                    extraction.fail(t);
+                } finally {
+                    extraction.finished.countDown();
+                }
+            }
+        };
+    }
+
+    // The state shared by the tasks of one archive. The first failure stops
+    // the others: tasks that have not started skip their entry, running ones
+    // fail at their next read.
+    private static final class Extraction {
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch finished;
+
+        Extraction(int tasks) {
+            finished = new CountDownLatch(tasks);
+        }
+
+        void fail(Throwable t) {
+            failure.compareAndSet(null, t);
+            stopped.set(true);
+        }
+
+        // Waits until every task has finished, even when interrupted, so the
+        // ZipFile is not closed under a running task.
+        void awaitAll() throws IOException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    if (!interrupted) {
+                        interrupted = true;
+                        fail(new IOException("Interrupted while extracting", e));
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable t = failure.get();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+    }
+
+    // Fails the read of a running task once the extraction has stopped.
+    private static final class StoppableInputStream extends FilterInputStream {
+        private final AtomicBoolean stopped;
+
+        StoppableInputStream(InputStream in, AtomicBoolean stopped) {
+            super(in);
+            this.stopped = stopped;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkStopped();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkStopped();
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkStopped();
+            return super.skip(n);
+        }
+
+        private void checkStopped() throws IOException {
+            if (stopped.get()) {
+                throw new IOException("Extraction stopped after a failure");
+            }
+        }
+    }
+}
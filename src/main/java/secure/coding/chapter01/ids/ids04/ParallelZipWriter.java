@@ -0,0 +1,370 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip archive whose entries are compressed in parallel, the way pigz
+ * compresses a gzip stream. Every entry is cut into blocks that are deflated
+ * independently on the pool; each block is primed with the last 32KB before
+ * it, so compression is close to that of a single stream. Blocks other than
+ * the last end with a sync flush, which leaves them byte aligned, so their
+ * output is simply concatenated. The CRC of an entry is computed by one more
+ * task, since it cannot be split.
+ *
+ * Entries are written in the order they were added, each as soon as all of
+ * its blocks are done, with the sizes and CRC in the local header. The
+ * archive is a plain zip without Zip64, so larger entries and archives are
+ * refused with a ZipException.
+ */
+public class ParallelZipWriter implements Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY = 32 * 1024;
+    private static final long MAX_ZIP32 = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final ExecutorService pool;
+    private final int blockSize;
+    private final int level;
+    private final long maxPendingBytes;
+    private final FileChannel out;
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private final List<Written> central = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private long pendingBytes;
+    private boolean closed;
+
+    public ParallelZipWriter(String filename, ExecutorService pool) throws IOException {
+        this(filename, pool, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelZipWriter(String filename, ExecutorService pool, int blockSize, int level)
+            throws IOException {
+        if (blockSize < DICTIONARY) {
+            throw new IllegalArgumentException("Block size must be at least 32KB: " + blockSize);
+        }
+        this.pool = pool;
+        this.blockSize = blockSize;
+        this.level = level;
+        // keep about four blocks per processor in flight
+        this.maxPendingBytes = 4L * blockSize * Runtime.getRuntime().availableProcessors();
+        this.out = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static final class Pending {
+        final String name;
+        final long size;
+        final long time;
+        final List<Future<byte[]>> blocks;
+        final Future<Long> crc;
+
+        Pending(String name, long size, long time, List<Future<byte[]>> blocks, Future<Long> crc) {
+            this.name = name;
+            this.size = size;
+            this.time = time;
+            this.blocks = blocks;
+            this.crc = crc;
+        }
+    }
+
+    private static final class Written {
+        final byte[] name;
+        final int method;
+        final int dosTime;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long offset;
+
+        Written(byte[] name, int method, int dosTime, long crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+
+    public void addEntry(String name, byte[] data) throws IOException {
+        addEntry(name, ByteBuffer.wrap(data));
+    }
+
+    // the file is mapped, so it must not change until the entry is written
+    public void addEntry(String name, Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw new ZipException("Entry too large to map: " + name);
+            }
+            addEntry(name, in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()));
+        }
+    }
+
+    public void addEntry(String name, ByteBuffer data) throws IOException {
+        checkName(name, false);
+        final ByteBuffer source = data.slice();
+        List<Future<byte[]>> blocks = new ArrayList<>();
+        int size = source.remaining();
+        for (int start = 0; start == 0 || start < size; start += blockSize) {
+            blocks.add(pool.submit(deflateTask(source, start, Math.min(start + blockSize, size))));
+        }
+        Future<Long> crc = pool.submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                CRC32 crc = new CRC32();
+                crc.update(source.duplicate());
+                return crc.getValue();
+            }
+        });
+        pending.add(new Pending(name, size, System.currentTimeMillis(), blocks, crc));
+        pendingBytes += size;
+        while (pendingBytes > maxPendingBytes && pending.size() > 1) {
+            writePending();
+        }
+    }
+
+    public void addDirectory(String name) throws IOException {
+        String directory = name.endsWith("/") ? name : name + "/";
+        checkName(directory, true);
+        flush();
+        write(directory, STORED, System.currentTimeMillis(), 0, 0, new ArrayList<Future<byte[]>>());
+    }
+
+    // writes every entry added so far
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writePending();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            writeCentralDirectory();
+        } finally {
+            for (Pending entry : pending) {
+                cancel(entry);
+            }
+            out.close();
+        }
+    }
+
+    private Callable<byte[]> deflateTask(final ByteBuffer source, final int start, final int end) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                Deflater deflater = new Deflater(level, true);
+                try {
+                    return deflate(deflater, source, start, end);
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    private static byte[] deflate(Deflater deflater, ByteBuffer source, int start, int end) {
+        if (start > 0) {
+            byte[] dictionary = new byte[Math.min(DICTIONARY, start)];
+            ByteBuffer view = source.duplicate();
+            view.position(start - dictionary.length);
+            view.get(dictionary);
+            deflater.setDictionary(dictionary);
+        }
+        byte[] input = new byte[end - start];
+        ByteBuffer view = source.duplicate();
+        view.position(start);
+        view.get(input);
+        deflater.setInput(input);
+
+        byte[] output = new byte[Math.max(64, input.length + input.length / 8 + 64)];
+        int length = 0;
+        if (end == source.limit()) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+        } else {
+            // a sync flush has finished when it leaves room in the buffer
+            int count;
+            do {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                count = deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+                length += count;
+            } while (length == output.length);
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    private void writePending() throws IOException {
+        Pending entry = pending.poll();
+        pendingBytes -= entry.size;
+        try {
+            write(entry.name, DEFLATED, entry.time, entry.size, get(entry.crc), entry.blocks);
+        } catch (IOException | RuntimeException e) {
+            cancel(entry);
+            throw e;
+        }
+    }
+
+    private void write(String name, int method, long time, long size, long crc, List<Future<byte[]>> blocks)
+            throws IOException {
+        List<byte[]> data = new ArrayList<>(blocks.size());
+        long compressedSize = 0;
+        for (Future<byte[]> block : blocks) {
+            byte[] bytes = get(block);
+            data.add(bytes);
+            compressedSize += bytes.length;
+        }
+        long offset = out.position();
+        if (compressedSize > MAX_ZIP32 || offset > MAX_ZIP32) {
+            throw new ZipException("Archive too large for a zip without Zip64: " + name);
+        }
+        if (central.size() == MAX_ENTRIES) {
+            throw new ZipException("Too many entries for a zip without Zip64.");
+        }
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int dosTime = dosTime(time);
+
+        ByteBuffer header = ByteBuffer.allocate(30 + encoded.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCSIG).putShort((short) VERSION).putShort((short) UTF8_FLAG).putShort((short) method)
+                .putInt(dosTime).putInt((int) crc).putInt((int) compressedSize).putInt((int) size)
+                .putShort((short) encoded.length).putShort((short) 0).put(encoded);
+        header.flip();
+        writeFully(header);
+        for (byte[] bytes : data) {
+            writeFully(ByteBuffer.wrap(bytes));
+        }
+        central.add(new Written(encoded, method, dosTime, crc, compressedSize, size, offset));
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long start = out.position();
+        for (Written entry : central) {
+            ByteBuffer record = ByteBuffer.allocate(46 + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt(CENSIG).putShort((short) VERSION).putShort((short) VERSION)
+                    .putShort((short) UTF8_FLAG).putShort((short) entry.method).putInt(entry.dosTime)
+                    .putInt((int) entry.crc).putInt((int) entry.compressedSize).putInt((int) entry.size)
+                    .putShort((short) entry.name.length).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) entry.offset)
+                    .put(entry.name);
+            record.flip();
+            writeFully(record);
+        }
+        long end = out.position();
+        if (end > MAX_ZIP32) {
+            throw new ZipException("Archive too large for a zip without Zip64.");
+        }
+        ByteBuffer record = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(ENDSIG).putShort((short) 0).putShort((short) 0).putShort((short) central.size())
+                .putShort((short) central.size()).putInt((int) (end - start)).putInt((int) start)
+                .putShort((short) 0);
+        record.flip();
+        writeFully(record);
+    }
+
+    private void checkName(String name, boolean directory) throws ZipException {
+        if (closed) {
+            throw new IllegalStateException("Archive already closed.");
+        }
+        if (name.isEmpty() || !ZipPreScanner.isSafeName(name) || (!directory && name.endsWith("/"))) {
+            throw new IllegalArgumentException("Invalid entry name: " + name);
+        }
+        if (name.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+            throw new ZipException("Entry name too long: " + name);
+        }
+        if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void cancel(Pending entry) {
+        for (Future<byte[]> block : entry.blocks) {
+            block.cancel(false);
+        }
+        entry.crc.cancel(false);
+    }
+
+    // MS-DOS date and time, as ZipEntry stores them; dates before 1980 are clamped
+    private static int dosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+}
@@ -0,0 +1,141 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares ZipOutputStream with ParallelZipWriter on one pool size after
+ * another, up to the number of processors (or the sizes given as arguments).
+ * The archive holds one 64MB entry and 256 entries of 64KB. Every archive is
+ * read back with ZipInputStream, which checks the CRCs, and compared with the
+ * input.
+ */
+public class ParallelZipWriterBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        Random random = new Random(42);
+        entries.put("export/large.txt", ArchiveGenerator.text(random, 64 * 1024 * 1024));
+        for (int i = 0; i < 256; i++) {
+            entries.put("export/small" + i + ".txt", ArchiveGenerator.text(random, 64 * 1024));
+        }
+        long total = 0;
+        for (byte[] data : entries.values()) {
+            total += data.length;
+        }
+        File archive = File.createTempFile("parallel", ".zip");
+        archive.deleteOnExit();
+
+        long baseline = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            writeZipOutputStream(archive, entries);
+            baseline = Math.min(baseline, System.nanoTime() - start);
+        }
+        verify(archive, entries);
+        report("ZipOutputStream", baseline, total, archive.length(), baseline);
+
+        int[] threads = threadCounts(args);
+        long single = 0;
+        for (int count : threads) {
+            ExecutorService pool = Executors.newFixedThreadPool(count);
+            long best = Long.MAX_VALUE;
+            try {
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    try (ParallelZipWriter writer = new ParallelZipWriter(archive.getPath(), pool)) {
+                        writer.addDirectory("export");
+                        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                            writer.addEntry(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+            } finally {
+                pool.shutdown();
+            }
+            verify(archive, entries);
+            if (single == 0) {
+                single = best;
+            }
+            report("parallel, " + count + " threads", best, total, archive.length(), single);
+        }
+    }
+
+    private static int[] threadCounts(String[] args) {
+        if (args.length > 0) {
+            int[] counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+            return counts;
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        int[] counts = new int[32];
+        int n = 0;
+        for (int count = 1; count < processors; count *= 2) {
+            counts[n++] = count;
+        }
+        counts[n++] = processors;
+        return Arrays.copyOf(counts, n);
+    }
+
+    private static void report(String mode, long nanos, long total, long compressed, long reference) {
+        System.out.format("%-22s %8.1f ms %8.1f MB/s  %6.1f%% of input  speedup %.2f%n", mode, nanos / 1e6,
+                total / (double) (1 << 20) / (nanos / 1e9), 100.0 * compressed / total,
+                (double) reference / nanos);
+    }
+
+    private static void writeZipOutputStream(File archive, Map<String, byte[]> entries) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive)))) {
+            out.putNextEntry(new ZipEntry("export/"));
+            out.closeEntry();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void verify(File archive, Map<String, byte[]> entries) throws IOException {
+        int found = 0;
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(archive)))) {
+            ZipEntry entry;
+            byte[] data = new byte[64 * 1024];
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                int count;
+                while ((count = in.read(data)) != -1) {
+                    content.write(data, 0, count);
+                }
+                if (!Arrays.equals(content.toByteArray(), entries.get(entry.getName()))) {
+                    throw new IllegalStateException("Entry differs after extraction: " + entry.getName());
+                }
+                found++;
+            }
+        }
+        if (found != entries.size()) {
+            throw new IllegalStateException("Archive holds " + found + " of " + entries.size() + " entries.");
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package secure.coding.chapter01.ids.ids04;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks an archive before any of it is extracted by reading only the end of
+ * central directory record and the central directory. The declared sizes are
+ * summed and the files counted against the extraction limits, compression
+ * ratios above a threshold are flagged, and repeated names, unsafe names and
+ * entries whose data overlaps (as in overlapping zip bombs) are reported. No
+ * entry is inflated, so a bomb is rejected in milliseconds.
+ *
+ * The declared sizes may lie, so the streaming limits of the extractors must
+ * stay in place; this scan only rejects archives that are bad on their face.
+ * Directory entries do not count against the limit on entries, as they do not
+ * in the extractors.
+ *
+ * An archive without an end of central directory record, such as a truncated
+ * download, cannot be scanned. verify rejects it, which suits ZipFile, as it
+ * needs the central directory. A streaming extractor can call
+ * verifyIfIndexed instead and leave such an archive to its own limits.
+ */
+public class ZipPreScanner {
+
+    public static final double DEFAULT_MAX_RATIO = 100;
+
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EOCD_SIG = 0x06064b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int CEN_SIZE = 46;
+    private static final int LOC_SIZE = 30;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int MAX_PROBLEMS = 16;
+    static final long MIN_RATIO_SIZE = 1 << 20; // small files may compress very well
+
+    private final long maxTotalSize;
+    private final int maxEntries;
+    private final double maxRatio;
+
+    public ZipPreScanner(long maxTotalSize, int maxEntries, double maxRatio) {
+        this.maxTotalSize = maxTotalSize;
+        this.maxEntries = maxEntries;
+        this.maxRatio = maxRatio;
+    }
+
+    public static final class ScanResult {
+        private final boolean indexed;
+        private final int entries;
+        private final long totalSize;
+        private final long totalCompressedSize;
+        private final double maxRatio;
+        private final List<String> problems;
+
+        ScanResult(boolean indexed, int entries, long totalSize, long totalCompressedSize, double maxRatio,
+                List<String> problems) {
+            this.indexed = indexed;
+            this.entries = entries;
+            this.totalSize = totalSize;
+            this.totalCompressedSize = totalCompressedSize;
+            this.maxRatio = maxRatio;
+            this.problems = Collections.unmodifiableList(problems);
+        }
+
+        public boolean isAcceptable() {
+            return problems.isEmpty();
+        }
+
+        // whether the archive has an end of central directory record
+        public boolean isIndexed() {
+            return indexed;
+        }
+
+        // all entries, directories included
+        public int getEntries() {
+            return entries;
+        }
+
+        // sum of the declared uncompressed sizes
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        public long getTotalCompressedSize() {
+            return totalCompressedSize;
+        }
+
+        // highest uncompressed to compressed ratio of a single entry
+        public double getMaxRatio() {
+            return maxRatio;
+        }
+
+        public List<String> getProblems() {
+            return problems;
+        }
+    }
+
+    private static final class CenEntry {
+        final String name;
+        final long offset;
+        final long end; // lowest possible end of the local header and data
+
+        CenEntry(String name, long offset, long end) {
+            this.name = name;
+            this.offset = offset;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Scans the archive and throws IllegalStateException with the first problem
+     * found, so it can be called where the extractors check their own limits.
+     */
+    public ScanResult verify(String filename) throws IOException {
+        ScanResult result = scan(filename);
+        if (!result.isAcceptable()) {
+            throw new IllegalStateException(result.getProblems().get(0));
+        }
+        return result;
+    }
+
+    /**
+     * Like verify, but accepts an archive without an end of central directory
+     * record, for the extractors that read the entries as a stream and enforce
+     * the limits themselves.
+     */
+    public ScanResult verifyIfIndexed(String filename) throws IOException {
+        ScanResult result = scan(filename);
+        if (result.isIndexed() && !result.isAcceptable()) {
+            throw new IllegalStateException(result.getProblems().get(0));
+        }
+        return result;
+    }
+
+    public ScanResult scan(String filename) throws IOException {
+        List<String> problems = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            int tailSize = (int) Math.min(fileSize, EOCD_SIZE + MAX_COMMENT);
+            ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+            int eocd = -1;
+            for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == EOCD_SIG) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd < 0) {
+                problems.add("No end of central directory record; not a zip archive.");
+                return new ScanResult(false, 0, 0, 0, 0, problems);
+            }
+            long eocdPosition = fileSize - tailSize + eocd;
+            long entries = tail.getShort(eocd + 10) & 0xFFFF;
+            long cenSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+            long cenOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+            long cenEnd = eocdPosition;
+            if ((entries == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL)
+                    && eocdPosition >= ZIP64_LOCATOR_SIZE) {
+                ByteBuffer locator = read(channel, eocdPosition - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+                if (locator.getInt(0) == ZIP64_LOCATOR_SIG) {
+                    long zip64Position = locator.getLong(8);
+                    if (zip64Position < 0 || zip64Position + ZIP64_EOCD_SIZE > fileSize) {
+                        problems.add("Zip64 end of central directory is outside the file.");
+                        return new ScanResult(true, 0, 0, 0, 0, problems);
+                    }
+                    ByteBuffer zip64 = read(channel, zip64Position, ZIP64_EOCD_SIZE);
+                    if (zip64.getInt(0) == ZIP64_EOCD_SIG) {
+                        entries = zip64.getLong(32);
+                        cenSize = zip64.getLong(40);
+                        cenOffset = zip64.getLong(48);
+                        cenEnd = zip64Position;
+                    }
+                }
+            }
+            // directories are not limited, so the files are counted while the directory is read;
+            // a directory can only hold as many entries as it has room for
+            if (entries < 0 || entries > cenSize / CEN_SIZE) {
+                problems.add("Central directory declares " + entries + " entries in " + cenSize + " bytes.");
+                return new ScanResult(true, (int) Math.min(Math.max(entries, 0), Integer.MAX_VALUE), 0, 0, 0,
+                        problems);
+            }
+            if (cenOffset < 0 || cenSize < 0 || cenSize > Integer.MAX_VALUE || cenOffset + cenSize > cenEnd
+                    || cenSize > entries * (CEN_SIZE + 3 * 0xFFFF)) {
+                problems.add("Central directory is outside the file or larger than its entries need.");
+                return new ScanResult(true, (int) entries, 0, 0, 0, problems);
+            }
+            return scanCentralDirectory(read(channel, cenOffset, (int) cenSize), (int) entries, cenOffset,
+                    problems);
+        }
+    }
+
+    private ScanResult scanCentralDirectory(ByteBuffer cen, int declaredEntries, long cenOffset,
+            List<String> problems) {
+        List<CenEntry> located = new ArrayList<>(declaredEntries);
+        Set<String> names = new HashSet<>();
+        long totalSize = 0;
+        long totalCompressed = 0;
+        double highestRatio = 0;
+        int count = 0;
+        int files = 0;
+        int pos = 0;
+        while (pos + CEN_SIZE <= cen.limit() && problems.size() < MAX_PROBLEMS) {
+            if (cen.getInt(pos) != CEN_SIG) {
+                problems.add("Corrupt central directory header at entry " + count + ".");
+                break;
+            }
+            long compressed = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            long offset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+            int next = pos + CEN_SIZE + nameLength + extraLength + commentLength;
+            if (next > cen.limit()) {
+                problems.add("Corrupt central directory header at entry " + count + ".");
+                break;
+            }
+            String name = name(cen, pos + CEN_SIZE, nameLength);
+
+            // Zip64 extended information holds the fields that are 0xFFFFFFFF
+            int extra = pos + CEN_SIZE + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = cen.getShort(extra) & 0xFFFF;
+                int length = cen.getShort(extra + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int field = extra + 4;
+                    int fieldEnd = Math.min(field + length, extraEnd);
+                    if (size == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        size = cen.getLong(field);
+                        field += 8;
+                    }
+                    if (compressed == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        compressed = cen.getLong(field);
+                        field += 8;
+                    }
+                    if (offset == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+                        offset = cen.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+
+            count++;
+            if (!isSafeName(name)) {
+                problems.add("Entry name is outside the extraction target directory: " + name);
+            }
+            if (!names.add(name)) {
+                problems.add("Duplicate entry: " + name);
+            }
+            if (size < 0 || compressed < 0 || offset < 0) {
+                problems.add("Entry size or offset out of range: " + name);
+            } else if (!name.endsWith("/")) {
+                files++;
+                if (files == maxEntries + 1) {
+                    problems.add("Too many files to unzip: more than " + maxEntries + " declared.");
+                }
+                totalSize += size;
+                totalCompressed += compressed;
+                double ratio = compressed == 0 ? (size == 0 ? 0 : Double.POSITIVE_INFINITY)
+                        : (double) size / compressed;
+                highestRatio = Math.max(highestRatio, ratio);
+                if (ratio > maxRatio && size >= MIN_RATIO_SIZE) {
+                    problems.add("Suspicious compression ratio " + (long) Math.min(ratio, Long.MAX_VALUE) + ":1 for "
+                            + name);
+                }
+                if ((totalSize > maxTotalSize || totalSize < 0) && totalSize - size <= maxTotalSize) {
+                    problems.add("File being unzipped is too big: more than " + maxTotalSize + " bytes declared.");
+                }
+                located.add(new CenEntry(name, offset, offset + LOC_SIZE + nameLength + compressed));
+            }
+            pos = next;
+        }
+        if (problems.isEmpty() && count != declaredEntries) {
+            problems.add("Central directory holds " + count + " entries but declares " + declaredEntries + ".");
+        }
+        if (problems.isEmpty()) {
+            checkOverlaps(located, cenOffset, problems);
+        }
+        return new ScanResult(true, count, totalSize, totalCompressed, highestRatio, problems);
+    }
+
+    // Local headers are at least LOC_SIZE + name bytes long, so the spans used
+    // here never exceed the real ones and an overlap found here is real.
+    private static void checkOverlaps(List<CenEntry> entries, long cenOffset, List<String> problems) {
+        Collections.sort(entries, new Comparator<CenEntry>() {
+            @Override
+            public int compare(CenEntry a, CenEntry b) {
+                return Long.compare(a.offset, b.offset);
+            }
+        });
+        for (int i = 0; i < entries.size() && problems.size() < MAX_PROBLEMS; i++) {
+            CenEntry entry = entries.get(i);
+            if (entry.end > cenOffset) {
+                problems.add("Entry data overlaps the central directory: " + entry.name);
+            } else if (i + 1 < entries.size() && entries.get(i + 1).offset < entry.end) {
+                problems.add("Overlapping entries: " + entry.name + " and " + entries.get(i + 1).name);
+            }
+        }
+    }
+
+    static boolean isSafeName(String name) {
+        if (name.startsWith("/") || name.startsWith("\\") || (name.length() > 1 && name.charAt(1) == ':')) {
+            return false;
+        }
+        for (String segment : name.split("[/\\\\]")) {
+            if (segment.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // decoded as UTF-8, as ZipFile and ZipInputStream do by default
+    private static String name(ByteBuffer cen, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = cen.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
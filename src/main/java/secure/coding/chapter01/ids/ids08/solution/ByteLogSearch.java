@@ -0,0 +1,176 @@
+package secure.coding.chapter01.ids.ids08.solution;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Searches a single-byte encoded log, such as the ISO-8859-15 log mapped by
+ * Keywords, without decoding it into a CharBuffer.
+ *
+ * The sanitized query is encoded once and matched against the mapped bytes.
+ * Line terminators and candidate first bytes are located eight bytes at a time
+ * (SWAR), and only the lines that match are decoded. The only memory used
+ * besides the mapping is the matching lines themselves.
+ *
+ * A line matches when it would match Keywords.keywordRegex(search): it holds
+ * " public[digits] " and the query occurs somewhere after the space that
+ * follows ']'.
+ */
+public class ByteLogSearch {
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGHS = 0x8080808080808080L;
+	private static final byte[] MARKER = { ' ', 'p', 'u', 'b', 'l', 'i', 'c', '[' };
+	private static final byte NEL = (byte) 0x85; // U+0085 in ISO-8859-1 and ISO-8859-15
+
+	private final ByteBuffer log;
+	private final Charset charset;
+
+	/**
+	 * @param log
+	 *            the bytes between position and limit are searched; the buffer
+	 *            itself is not modified
+	 * @param charset
+	 *            a single-byte charset in which '\n', '\r', ' ' and the digits
+	 *            have their ASCII values
+	 */
+	public ByteLogSearch(ByteBuffer log, Charset charset) {
+		this.log = log.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.charset = charset;
+	}
+
+	public Set<String> search(String sanitizedSearch) {
+		Set<String> lines = new HashSet<>();
+		search(sanitizedSearch, log.position(), log.limit(), lines);
+		return lines;
+	}
+
+	public void search(String sanitizedSearch, int from, int to, Collection<String> lines) {
+		byte[] query = encode(sanitizedSearch);
+		if (query == null) {
+			return; // the log cannot contain a char the charset cannot encode
+		}
+		int start = from;
+		while (start <= to) {
+			int end = nextLineTerminator(log, start, to);
+			if (lineMatches(start, end, query)) {
+				lines.add(decode(start, end));
+			}
+			if (end == to) {
+				break;
+			}
+			start = end + 1;
+		}
+	}
+
+	private boolean lineMatches(int start, int end, byte[] query) {
+		int marker = indexOf(log, start, end, MARKER);
+		while (marker >= 0) {
+			int i = marker + MARKER.length;
+			int digits = i;
+			while (i < end && log.get(i) >= '0' && log.get(i) <= '9') {
+				i++;
+			}
+			if (i > digits && i + 1 < end && log.get(i) == ']' && log.get(i + 1) == ' ') {
+				// the earliest valid marker leaves the widest window for the query
+				return query.length == 0 || indexOf(log, i + 2, end, query) >= 0;
+			}
+			marker = indexOf(log, marker + 1, end, MARKER);
+		}
+		return false;
+	}
+
+	private byte[] encode(String search) {
+		CharsetEncoder encoder = charset.newEncoder();
+		try {
+			ByteBuffer encoded = encoder.encode(CharBuffer.wrap(search));
+			byte[] bytes = new byte[encoded.remaining()];
+			encoded.get(bytes);
+			return bytes;
+		} catch (CharacterCodingException e) {
+			return null;
+		}
+	}
+
+	private String decode(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = log.get(start + i);
+		}
+		return new String(bytes, charset);
+	}
+
+	// sets the high bit of each byte of word equal to b; the lowest set bit is exact
+	static long matchMask(long word, byte b) {
+		long x = word ^ (ONES * (b & 0xFF));
+		return (x - ONES) & ~x & HIGHS;
+	}
+
+	/**
+	 * Returns the index of the first '\n', '\r' or NEL in [from, to), or to. The
+	 * buffer must be in little-endian order so that the lowest set bit of a mask
+	 * is the byte with the lowest address.
+	 */
+	static int nextLineTerminator(ByteBuffer buffer, int from, int to) {
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			long word = buffer.getLong(i);
+			long mask = matchMask(word, (byte) '\n') | matchMask(word, (byte) '\r') | matchMask(word, NEL);
+			if (mask != 0) {
+				return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+			}
+		}
+		for (; i < to; i++) {
+			byte b = buffer.get(i);
+			if (b == '\n' || b == '\r' || b == NEL) {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of needle in [from, to), or -1.
+	 * Candidates for the first byte are found a word at a time and verified.
+	 */
+	static int indexOf(ByteBuffer buffer, int from, int to, byte[] needle) {
+		if (needle.length == 0) {
+			return from <= to ? from : -1;
+		}
+		int last = to - needle.length; // last possible start
+		byte first = needle[0];
+		int i = from;
+		for (; i + 8 <= last + 1; i += 8) {
+			long mask = matchMask(buffer.getLong(i), first);
+			while (mask != 0) {
+				int candidate = i + (Long.numberOfTrailingZeros(mask) >>> 3);
+				if (regionMatches(buffer, candidate, needle)) {
+					return candidate;
+				}
+				mask &= mask - 1;
+			}
+		}
+		for (; i <= last; i++) {
+			if (regionMatches(buffer, i, needle)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean regionMatches(ByteBuffer buffer, int offset, byte[] needle) {
+		for (int j = 0; j < needle.length; j++) {
+			if (buffer.get(offset + j) != needle[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,56 @@
+package secure.coding.chapter01.ids.ids08.solution;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+/**
+ * Compares decoding the mapped log and searching the chars with searching the
+ * mapped bytes directly. Pass the log size in megabytes as the first argument.
+ */
+public class ByteLogSearchBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		Charset charset = Charset.forName("ISO-8859-15");
+		Path file = Files.createTempFile("keywords", ".log");
+		try {
+			Files.write(file, ParallelLogSearchBenchmark.syntheticLog(megabytes).toString().getBytes(charset));
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				String search = Keywords.sanitize("carol upload");
+				LinearRegex regex = LinearRegex.compile(Keywords.keywordRegex(search));
+				ByteLogSearch bytes = new ByteLogSearch(mapped, charset);
+
+				long decodeBest = Long.MAX_VALUE;
+				long bytesBest = Long.MAX_VALUE;
+				Set<String> expected = null;
+				Set<String> actual = null;
+				for (int i = 0; i < ROUNDS; i++) {
+					long start = System.nanoTime();
+					CharBuffer log = charset.newDecoder().decode(mapped.duplicate());
+					expected = regex.findLines(log);
+					decodeBest = Math.min(decodeBest, System.nanoTime() - start);
+					start = System.nanoTime();
+					actual = bytes.search(search);
+					bytesBest = Math.min(bytesBest, System.nanoTime() - start);
+				}
+				System.out.format("Mapped log: %d MB, decoded copy: %d MB of heap%n", channel.size() >> 20,
+						(channel.size() * 2) >> 20);
+				System.out.format("decode + LinearRegex: %8.1f ms%n", decodeBest / 1e6);
+				System.out.format("ByteLogSearch:        %8.1f ms, no heap copy%n", bytesBest / 1e6);
+				System.out.println(expected.equals(actual) ? actual.size() + " lines, results agree" : "RESULTS DIFFER");
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -14,30 +14,43 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 public class Keywords {
 	private static ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-	private static CharBuffer log;
+	private static MappedByteBuffer mapping;
+	private static CharsetDecoder decoder;
+	private static CharBuffer log; // decoded on first use by a CharBuffer search, dropped when the log changes
+	private static long checksum; // CRC-32 of the mapping when it was last checked
+	private static ByteLogSearch byteSearch;
+	private static long logVersion; // incremented when a reload changes the log
+	private static SearchCache cache;
 	private static final Object lock = new Object();
+	private static final ParallelLogSearch parallelSearch = new ParallelLogSearch();
 	// Map log file into memory, and periodically reload
 	static {
 		try {
 			FileChannel channel = new FileInputStream("path").getChannel();
 			// Get the file's size and map it into memory
 			int size = (int) channel.size();
-			final MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
 			Charset charset = Charset.forName("ISO-8859-15");
-			final CharsetDecoder decoder = charset.newDecoder();
-			log = decoder.decode(mappedBuffer); // Read file into char buffer
+			decoder = charset.newDecoder();
+			checksum = checksum(mapping);
+			byteSearch = new ByteLogSearch(mapping, charset); // Search the mapping without decoding
+			cache = new SearchCache(0.1, size); // Cache at most 10% of the log size
 
 			Runnable periodicLogRead = new Runnable() {
 				@Override
 				public void run() {
+					// Checksum the mapped bytes instead of decoding a second copy to compare
+					long current = checksum(mapping);
 					synchronized (lock) {
-						try {
-							log = decoder.decode(mappedBuffer);
-						} catch (CharacterCodingException e) {
-							// Forward to handler
+						if (current != checksum) {
+							checksum = current;
+							log = null;
+							logVersion++;
+							cache.invalidateBefore(logVersion);
 						}
 					}
 				}
@@ -48,25 +61,51 @@ public class Keywords {
 		}
 	}
 
-	public static Set<String> suggestSearches(String search) {
-		synchronized (lock) {
-			Set<String> searches = new HashSet<>();
+	private static long checksum(MappedByteBuffer mapping) {
+		CRC32 crc = new CRC32();
+		crc.update(mapping.duplicate());
+		return crc.getValue();
+	}
 
-			// This compliant solution filters out non-alphanumeric characters (except space and single
-			// quote) from the search string, which prevents regex injection previously described.
-			StringBuilder sb = new StringBuilder(search.length());
-			for (int i = 0; i < search.length(); ++i) {
-				char ch = search.charAt(i);
-				if (Character.isLetterOrDigit(ch) || ch == ' ' || ch == '\'') {
-					sb.append(ch);
-				}
+	// Decodes the log for the CharBuffer searches the first time one needs it; call with lock held
+	private static CharBuffer decodedLog() {
+		if (log == null) {
+			try {
+				log = decoder.decode(mapping.duplicate());
+			} catch (CharacterCodingException e) {
+				throw new IllegalStateException("Log is not valid ISO-8859-15", e);
 			}
-			search = sb.toString();
+		}
+		return log;
+	}
 
-			// Construct regex dynamically from user string
-			String regex = "(.*? +public\\[\\d+\\] +.*" + search + ".*)";
-			Pattern keywordPattern = Pattern.compile(regex);
-			Matcher logMatcher = keywordPattern.matcher(log);
+	// This compliant solution filters out non-alphanumeric characters (except space and single
+	// quote) from the search string, which prevents regex injection previously described.
+	static String sanitize(String search) {
+		StringBuilder sb = new StringBuilder(search.length());
+		for (int i = 0; i < search.length(); ++i) {
+			char ch = search.charAt(i);
+			if (Character.isLetterOrDigit(ch) || ch == ' ' || ch == '\'') {
+				sb.append(ch);
+			}
+		}
+		return sb.toString();
+	}
+
+	// Construct regex dynamically from sanitized user string
+	static String keywordRegex(String search) {
+		return "(.*? +public\\[\\d+\\] +.*" + search + ".*)";
+	}
+
+	static Pattern keywordPattern(String search) {
+		return Pattern.compile(keywordRegex(search));
+	}
+
+	public static Set<String> suggestSearches(String search) {
+		synchronized (lock) {
+			Set<String> searches = new HashSet<>();
+			Pattern keywordPattern = keywordPattern(sanitize(search));
+			Matcher logMatcher = keywordPattern.matcher(decodedLog());
 			while (logMatcher.find()) {
 				String found = logMatcher.group(1);
 				searches.add(found);
@@ -75,4 +114,67 @@ public class Keywords {
 		}
 	}
 
+	/**
+	 * Searches the current log snapshot in line-aligned chunks on a ForkJoinPool.
+	 * The lock is held only long enough to read the log reference, so the periodic
+	 * reload is not blocked for the duration of the search. When the timeout expires
+	 * the matches found so far are returned and the result is marked incomplete.
+	 */
+	public static ParallelLogSearch.SearchResult suggestSearches(String search, long timeout, TimeUnit unit) {
+		CharBuffer snapshot;
+		synchronized (lock) {
+			snapshot = decodedLog().duplicate();
+		}
+		return parallelSearch.search(snapshot, keywordPattern(sanitize(search)), timeout, unit, null);
+	}
+
+	/**
+	 * Returns the same lines as suggestSearches(search), but matches them with
+	 * LinearRegex instead of java.util.regex. The search costs O(n * m) for a log of
+	 * n characters and a pattern of m instructions, whatever the log contains.
+	 */
+	public static Set<String> suggestSearchesLinear(String search) {
+		LinearRegex regex = LinearRegex.compile(keywordRegex(sanitize(search)));
+		synchronized (lock) {
+			Set<String> searches = new HashSet<>();
+			CharBuffer text = decodedLog();
+			regex.matcher().findLines(text, 0, text.length(), searches);
+			return searches;
+		}
+	}
+
+	/**
+	 * Returns the same lines as suggestSearches(search), but matches the encoded
+	 * query directly against the mapped ISO-8859-15 bytes. Only matching lines are
+	 * decoded, so no decoded copy of the log is needed for the search. The
+	 * CharBuffer searches decode the log on first use and keep that copy until a
+	 * reload finds the log changed.
+	 */
+	public static Set<String> suggestSearchesBytes(String search) {
+		return byteSearch.search(sanitize(search));
+	}
+
+	/**
+	 * Returns the same lines as suggestSearches(search) from a cache of recent
+	 * queries. Entries are tagged with the log version and go stale when a reload
+	 * changes the log. The returned set is unmodifiable.
+	 */
+	public static Set<String> suggestSearchesCached(String search) {
+		String sanitized = sanitize(search);
+		synchronized (lock) {
+			Set<String> cached = cache.get(sanitized, logVersion);
+			if (cached != null) {
+				return cached;
+			}
+			Set<String> searches = new HashSet<>();
+			CharBuffer text = decodedLog();
+			LinearRegex.compile(keywordRegex(sanitized)).matcher().findLines(text, 0, text.length(), searches);
+			return cache.put(sanitized, logVersion, searches);
+		}
+	}
+
+	public static SearchCache searchCache() {
+		return cache;
+	}
+
 }
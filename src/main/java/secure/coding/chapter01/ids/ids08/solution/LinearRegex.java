@@ -0,0 +1,669 @@
+package secure.coding.chapter01.ids.ids08.solution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A regular expression engine whose running time is linear in the input.
+ *
+ * java.util.regex backtracks, so a pattern such as "(.*? +public\[\d+\] +.*x.*)"
+ * takes time polynomial in the line length, and nested quantifiers can take
+ * exponential time. This engine compiles the pattern into a Thompson NFA and
+ * simulates it with a lazily built DFA, so searching n characters with a
+ * pattern of m instructions costs O(n * m) at worst, whatever the input.
+ *
+ * Only the subset of the syntax needed by the log search is supported:
+ * literals, '.', character classes with ranges and negation, the escapes \d \D
+ * \w \W \s \S, groups, alternation and the quantifiers *, +, ?, {n}, {n,} and
+ * {n,m}. Lazy quantifiers are accepted; they select the same lines. Back
+ * references, look-around, anchors and possessive quantifiers are rejected with
+ * a PatternSyntaxException.
+ */
+public final class LinearRegex {
+
+	private static final int CLASS = 0; // consume one char in classes[arg1]
+	private static final int SPLIT = 1; // continue at arg1 and arg2
+	private static final int JMP = 2; // continue at arg1
+	private static final int MATCH = 3;
+
+	private static final int MAX_PROGRAM = 20000;
+	private static final int MAX_REPEAT = 1000;
+	private static final int MAX_DFA_STATES = 4096;
+
+	private final String regex;
+	private final int[] op;
+	private final int[] arg1;
+	private final int[] arg2;
+	private final CharClass[] classes;
+
+	private LinearRegex(String regex, int[] op, int[] arg1, int[] arg2, CharClass[] classes) {
+		this.regex = regex;
+		this.op = op;
+		this.arg1 = arg1;
+		this.arg2 = arg2;
+		this.classes = classes;
+	}
+
+	public static LinearRegex compile(String regex) {
+		Parser parser = new Parser(regex);
+		Node root = parser.parse();
+		Compiler compiler = new Compiler(regex);
+		compiler.emit(root);
+		compiler.add(MATCH, 0, 0);
+		return compiler.build();
+	}
+
+	public String pattern() {
+		return regex;
+	}
+
+	// number of NFA instructions, the m in O(n * m)
+	public int size() {
+		return op.length;
+	}
+
+	/**
+	 * Returns a matcher holding its own DFA cache. A matcher may be reused for
+	 * many searches but must not be shared between threads.
+	 */
+	public Matcher matcher() {
+		return new Matcher();
+	}
+
+	/**
+	 * Returns every line of the text that contains a match. Lines are separated
+	 * by the terminators that '.' does not match in java.util.regex, so for a
+	 * pattern such as "(.*? +public\[\d+\] +.*x.*)" the result is the same set of
+	 * strings as group 1 of each Pattern.find().
+	 */
+	public Set<String> findLines(CharSequence text) {
+		Set<String> lines = new LinkedHashSet<>();
+		matcher().findLines(text, 0, text.length(), lines);
+		return lines;
+	}
+
+	static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	public final class Matcher {
+		private final Map<StateKey, DState> cache = new HashMap<>();
+		private final int[] dense = new int[op.length];
+		private final int[] sparse = new int[op.length];
+		private final int[] stack = new int[2 * op.length + 2];
+		private int size;
+		private DState initial;
+
+		private Matcher() {
+		}
+
+		public boolean containsMatch(CharSequence text) {
+			return containsMatch(text, 0, text.length());
+		}
+
+		public boolean containsMatch(CharSequence text, int from, int to) {
+			DState state = initial();
+			for (int i = from; i < to && !state.accepting; i++) {
+				state = step(state, text.charAt(i));
+			}
+			return state.accepting;
+		}
+
+		public void findLines(CharSequence text, int from, int to, Collection<String> lines) {
+			int lineStart = from;
+			DState state = initial();
+			boolean matched = state.accepting;
+			for (int i = from; i < to; i++) {
+				char c = text.charAt(i);
+				if (isLineTerminator(c)) {
+					if (matched) {
+						lines.add(text.subSequence(lineStart, i).toString());
+					}
+					lineStart = i + 1;
+					state = initial();
+					matched = state.accepting;
+				} else if (!matched) {
+					state = step(state, c);
+					matched = state.accepting;
+				}
+			}
+			if (matched) {
+				lines.add(text.subSequence(lineStart, to).toString());
+			}
+		}
+
+		private DState initial() {
+			if (initial == null) {
+				size = 0;
+				addClosure(0);
+				initial = intern();
+			}
+			return initial;
+		}
+
+		private DState step(DState state, char c) {
+			if (c < 256 && state.next[c] != null) {
+				return state.next[c];
+			}
+			size = 0;
+			for (int pc : state.states) {
+				if (classes[arg1[pc]].matches(c)) {
+					addClosure(pc + 1);
+				}
+			}
+			// a match may also start after c
+			addClosure(0);
+			DState next = intern();
+			if (c < 256) {
+				state.next[c] = next;
+			}
+			return next;
+		}
+
+		private void addClosure(int start) {
+			int top = 0;
+			stack[top++] = start;
+			while (top > 0) {
+				int pc = stack[--top];
+				int index = sparse[pc];
+				if (index < size && dense[index] == pc) {
+					continue;
+				}
+				sparse[pc] = size;
+				dense[size++] = pc;
+				if (op[pc] == SPLIT) {
+					stack[top++] = arg2[pc];
+					stack[top++] = arg1[pc];
+				} else if (op[pc] == JMP) {
+					stack[top++] = arg1[pc];
+				}
+			}
+		}
+
+		private DState intern() {
+			int consuming = 0;
+			boolean accepting = false;
+			for (int i = 0; i < size; i++) {
+				int pc = dense[i];
+				if (op[pc] == CLASS) {
+					consuming++;
+				} else if (op[pc] == MATCH) {
+					accepting = true;
+				}
+			}
+			int[] states = new int[consuming];
+			int j = 0;
+			for (int i = 0; i < size; i++) {
+				if (op[dense[i]] == CLASS) {
+					states[j++] = dense[i];
+				}
+			}
+			Arrays.sort(states);
+			StateKey key = new StateKey(states, accepting);
+			DState state = cache.get(key);
+			if (state == null) {
+				if (cache.size() >= MAX_DFA_STATES) {
+					// keep memory bounded; states are rebuilt on demand
+					cache.clear();
+					initial = null;
+				}
+				state = new DState(states, accepting);
+				cache.put(key, state);
+			}
+			return state;
+		}
+	}
+
+	private static final class DState {
+		final int[] states;
+		final boolean accepting;
+		final DState[] next = new DState[256];
+
+		DState(int[] states, boolean accepting) {
+			this.states = states;
+			this.accepting = accepting;
+		}
+	}
+
+	private static final class StateKey {
+		private final int[] states;
+		private final boolean accepting;
+		private final int hash;
+
+		StateKey(int[] states, boolean accepting) {
+			this.states = states;
+			this.accepting = accepting;
+			this.hash = Arrays.hashCode(states) * 31 + (accepting ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof StateKey)) {
+				return false;
+			}
+			StateKey other = (StateKey) obj;
+			return accepting == other.accepting && Arrays.equals(states, other.states);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * A set of chars kept as sorted, disjoint [lo, hi] ranges with a lookup
+	 * table for Latin-1.
+	 */
+	static final class CharClass {
+		private static final int[] DIGIT = { '0', '9' };
+		private static final int[] WORD = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+		private static final int[] SPACE = { '\t', '\r', ' ', ' ' };
+		private static final int[] ANY = complement(new int[] { '\n', '\n', '\r', '\r', '\u0085', '\u0085',
+				'\u2028', '\u2029' });
+
+		private final int[] ranges;
+		private final boolean[] latin = new boolean[256];
+
+		CharClass(int[] ranges) {
+			this.ranges = ranges;
+			for (int c = 0; c < 256; c++) {
+				latin[c] = inRanges(c);
+			}
+		}
+
+		boolean matches(char c) {
+			return c < 256 ? latin[c] : inRanges(c);
+		}
+
+		private boolean inRanges(int c) {
+			for (int i = 0; i < ranges.length; i += 2) {
+				if (c < ranges[i]) {
+					return false;
+				}
+				if (c <= ranges[i + 1]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		static int[] normalize(List<int[]> ranges) {
+			int[][] sorted = ranges.toArray(new int[0][]);
+			Arrays.sort(sorted, (a, b) -> Integer.compare(a[0], b[0]));
+			int[] result = new int[sorted.length * 2];
+			int n = 0;
+			for (int[] range : sorted) {
+				if (n > 0 && range[0] <= result[n - 1] + 1) {
+					result[n - 1] = Math.max(result[n - 1], range[1]);
+				} else {
+					result[n++] = range[0];
+					result[n++] = range[1];
+				}
+			}
+			return Arrays.copyOf(result, n);
+		}
+
+		static int[] complement(int[] ranges) {
+			int[] result = new int[ranges.length + 2];
+			int n = 0;
+			int next = 0;
+			for (int i = 0; i < ranges.length; i += 2) {
+				if (ranges[i] > next) {
+					result[n++] = next;
+					result[n++] = ranges[i] - 1;
+				}
+				next = ranges[i + 1] + 1;
+			}
+			if (next <= Character.MAX_VALUE) {
+				result[n++] = next;
+				result[n++] = Character.MAX_VALUE;
+			}
+			return Arrays.copyOf(result, n);
+		}
+	}
+
+	private static final int LITERAL = 0;
+	private static final int CAT = 1;
+	private static final int ALT = 2;
+	private static final int REPEAT = 3;
+
+	private static final class Node {
+		final int kind;
+		final int[] ranges; // LITERAL
+		final List<Node> children; // CAT, ALT, REPEAT
+		final int min;
+		final int max; // -1 for unbounded
+
+		Node(int kind, int[] ranges, List<Node> children, int min, int max) {
+			this.kind = kind;
+			this.ranges = ranges;
+			this.children = children;
+			this.min = min;
+			this.max = max;
+		}
+	}
+
+	private static final class Parser {
+		private final String regex;
+		private int pos;
+
+		Parser(String regex) {
+			this.regex = regex;
+		}
+
+		Node parse() {
+			Node root = parseAlternation();
+			if (pos < regex.length()) {
+				throw error("Unmatched closing ')'");
+			}
+			return root;
+		}
+
+		private PatternSyntaxException error(String description) {
+			return new PatternSyntaxException(description, regex, pos - 1);
+		}
+
+		private boolean more() {
+			return pos < regex.length();
+		}
+
+		private char peek() {
+			return regex.charAt(pos);
+		}
+
+		private Node parseAlternation() {
+			List<Node> alternatives = new ArrayList<>();
+			alternatives.add(parseConcatenation());
+			while (more() && peek() == '|') {
+				pos++;
+				alternatives.add(parseConcatenation());
+			}
+			return alternatives.size() == 1 ? alternatives.get(0) : new Node(ALT, null, alternatives, 0, 0);
+		}
+
+		private Node parseConcatenation() {
+			List<Node> items = new ArrayList<>();
+			while (more() && peek() != '|' && peek() != ')') {
+				items.add(parseRepeat());
+			}
+			return new Node(CAT, null, items, 0, 0);
+		}
+
+		private Node parseRepeat() {
+			Node atom = parseAtom();
+			while (more()) {
+				char c = peek();
+				int min;
+				int max;
+				if (c == '*') {
+					min = 0;
+					max = -1;
+				} else if (c == '+') {
+					min = 1;
+					max = -1;
+				} else if (c == '?') {
+					min = 0;
+					max = 1;
+				} else if (c == '{') {
+					int close = regex.indexOf('}', pos);
+					if (close < 0) {
+						throw error("Unclosed counted closure");
+					}
+					String bounds = regex.substring(pos + 1, close);
+					int comma = bounds.indexOf(',');
+					min = parseBound(comma < 0 ? bounds : bounds.substring(0, comma));
+					max = comma < 0 ? min
+							: comma == bounds.length() - 1 ? -1 : parseBound(bounds.substring(comma + 1));
+					if (min > MAX_REPEAT || max > MAX_REPEAT || (max != -1 && max < min)) {
+						throw error("Illegal repetition range");
+					}
+					pos = close;
+				} else {
+					break;
+				}
+				pos++;
+				if (more() && peek() == '?') {
+					pos++; // lazy
+				} else if (more() && peek() == '+') {
+					pos++;
+					throw error("Possessive quantifiers are not supported");
+				}
+				atom = new Node(REPEAT, null, Arrays.asList(atom), min, max);
+			}
+			return atom;
+		}
+
+		// digits only, as Pattern requires: parseInt would take a sign, and -1 means unbounded
+		private int parseBound(String digits) {
+			if (digits.isEmpty()) {
+				throw error("Illegal repetition");
+			}
+			for (int i = 0; i < digits.length(); i++) {
+				char c = digits.charAt(i);
+				if (c < '0' || c > '9') {
+					throw error("Illegal repetition");
+				}
+			}
+			try {
+				return Integer.parseInt(digits);
+			} catch (NumberFormatException e) {
+				throw error("Illegal repetition range");
+			}
+		}
+
+		private Node parseAtom() {
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case '(':
+				if (regex.startsWith("?:", pos)) {
+					pos += 2;
+				} else if (more() && peek() == '?') {
+					throw error("Look-around and inline flags are not supported");
+				}
+				Node inner = parseAlternation();
+				if (!more() || peek() != ')') {
+					throw error("Unclosed group");
+				}
+				pos++;
+				return inner;
+			case '.':
+				return literal(CharClass.ANY);
+			case '[':
+				return literal(parseClass());
+			case '\\':
+				return literal(parseEscape());
+			case '^':
+			case '$':
+				throw error("Anchors are not supported");
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw error("Dangling meta character '" + c + "'");
+			default:
+				return literal(new int[] { c, c });
+			}
+		}
+
+		private Node literal(int[] ranges) {
+			return new Node(LITERAL, ranges, null, 0, 0);
+		}
+
+		private int[] parseClass() {
+			boolean negated = more() && peek() == '^';
+			if (negated) {
+				pos++;
+			}
+			List<int[]> ranges = new ArrayList<>();
+			boolean first = true;
+			while (true) {
+				if (!more()) {
+					throw error("Unclosed character class");
+				}
+				char c = regex.charAt(pos++);
+				if (c == ']' && !first) {
+					break;
+				}
+				first = false;
+				if (c == '[' || (c == '&' && more() && peek() == '&')) {
+					throw error("Nested classes and intersections are not supported");
+				}
+				int[] item = c == '\\' ? parseEscape() : new int[] { c, c };
+				if (item.length == 2 && item[0] == item[1] && pos + 1 < regex.length() && peek() == '-'
+						&& regex.charAt(pos + 1) != ']') {
+					pos++;
+					char d = regex.charAt(pos++);
+					int[] end = d == '\\' ? parseEscape() : new int[] { d, d };
+					if (end.length != 2 || end[0] != end[1] || end[0] < item[0]) {
+						throw error("Illegal character range");
+					}
+					item = new int[] { item[0], end[0] };
+				}
+				for (int i = 0; i < item.length; i += 2) {
+					ranges.add(new int[] { item[i], item[i + 1] });
+				}
+			}
+			int[] set = CharClass.normalize(ranges);
+			return negated ? CharClass.complement(set) : set;
+		}
+
+		private int[] parseEscape() {
+			if (!more()) {
+				throw error("Unexpected internal error");
+			}
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case 'd':
+				return CharClass.DIGIT;
+			case 'D':
+				return CharClass.complement(CharClass.DIGIT);
+			case 'w':
+				return CharClass.WORD;
+			case 'W':
+				return CharClass.complement(CharClass.WORD);
+			case 's':
+				return CharClass.SPACE;
+			case 'S':
+				return CharClass.complement(CharClass.SPACE);
+			case 't':
+				return new int[] { '\t', '\t' };
+			case 'n':
+				return new int[] { '\n', '\n' };
+			case 'r':
+				return new int[] { '\r', '\r' };
+			case 'f':
+				return new int[] { '\f', '\f' };
+			default:
+				if (Character.isLetterOrDigit(c)) {
+					throw error("Unsupported escape sequence");
+				}
+				return new int[] { c, c };
+			}
+		}
+	}
+
+	private static final class Compiler {
+		private final String regex;
+		private int[] op = new int[64];
+		private int[] arg1 = new int[64];
+		private int[] arg2 = new int[64];
+		private int size;
+		private final List<CharClass> classes = new ArrayList<>();
+		private final Map<List<Integer>, Integer> classIndex = new HashMap<>();
+
+		Compiler(String regex) {
+			this.regex = regex;
+		}
+
+		int add(int opcode, int a1, int a2) {
+			if (size == MAX_PROGRAM) {
+				throw new PatternSyntaxException("Pattern is too large", regex, -1);
+			}
+			if (size == op.length) {
+				op = Arrays.copyOf(op, size * 2);
+				arg1 = Arrays.copyOf(arg1, size * 2);
+				arg2 = Arrays.copyOf(arg2, size * 2);
+			}
+			op[size] = opcode;
+			arg1[size] = a1;
+			arg2[size] = a2;
+			return size++;
+		}
+
+		void emit(Node node) {
+			switch (node.kind) {
+			case LITERAL:
+				add(CLASS, classFor(node.ranges), 0);
+				break;
+			case CAT:
+				for (Node child : node.children) {
+					emit(child);
+				}
+				break;
+			case ALT:
+				List<Integer> jumps = new ArrayList<>();
+				for (int i = 0; i < node.children.size(); i++) {
+					if (i == node.children.size() - 1) {
+						emit(node.children.get(i));
+						break;
+					}
+					int split = add(SPLIT, size + 1, 0);
+					emit(node.children.get(i));
+					jumps.add(add(JMP, 0, 0));
+					arg2[split] = size;
+				}
+				for (int jump : jumps) {
+					arg1[jump] = size;
+				}
+				break;
+			default:
+				Node body = node.children.get(0);
+				for (int i = 0; i < node.min; i++) {
+					emit(body);
+				}
+				if (node.max == -1) {
+					int split = add(SPLIT, size + 1, 0);
+					emit(body);
+					add(JMP, split, 0);
+					arg2[split] = size;
+				} else {
+					List<Integer> splits = new ArrayList<>();
+					for (int i = node.min; i < node.max; i++) {
+						splits.add(add(SPLIT, size + 1, 0));
+						emit(body);
+					}
+					for (int split : splits) {
+						arg2[split] = size;
+					}
+				}
+			}
+		}
+
+		private int classFor(int[] ranges) {
+			List<Integer> key = new ArrayList<>(ranges.length);
+			for (int r : ranges) {
+				key.add(r);
+			}
+			Integer index = classIndex.get(key);
+			if (index == null) {
+				index = classes.size();
+				classes.add(new CharClass(ranges));
+				classIndex.put(key, index);
+			}
+			return index;
+		}
+
+		LinearRegex build() {
+			return new LinearRegex(regex, Arrays.copyOf(op, size), Arrays.copyOf(arg1, size),
+					Arrays.copyOf(arg2, size), classes.toArray(new CharClass[0]));
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package secure.coding.chapter01.ids.ids08.solution;
+
+import java.nio.CharBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares LinearRegex with java.util.regex on a normal log search and on
+ * inputs that make the backtracking engine slow.
+ */
+public class LinearRegexBenchmark {
+
+	private static final int ROUNDS = 2;
+
+	static Set<String> patternLines(Pattern pattern, CharSequence log) {
+		Set<String> lines = new HashSet<>();
+		Matcher matcher = pattern.matcher(log);
+		while (matcher.find()) {
+			lines.add(matcher.group(1));
+		}
+		return lines;
+	}
+
+	static Set<String> linearLines(LinearRegex regex, CharSequence log) {
+		Set<String> lines = new HashSet<>();
+		regex.matcher().findLines(log, 0, log.length(), lines);
+		return lines;
+	}
+
+	// many public[n] markers on long lines that never contain the keyword
+	static CharBuffer adversarialLog(int lines, int lineLength) {
+		StringBuilder sb = new StringBuilder(lines * (lineLength + 1));
+		for (int i = 0; i < lines; i++) {
+			int start = sb.length();
+			while (sb.length() - start < lineLength) {
+				sb.append(" public[").append(i).append("] ");
+			}
+			sb.append('\n');
+		}
+		return ParallelLogSearchBenchmark.heapBuffer(sb);
+	}
+
+	static String repeat(char c, int count) {
+		StringBuilder sb = new StringBuilder(count);
+		for (int i = 0; i < count; i++) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	static void compare(String name, String regex, CharSequence log) {
+		Pattern pattern = Pattern.compile(regex);
+		LinearRegex linear = LinearRegex.compile(regex);
+		long patternBest = Long.MAX_VALUE;
+		long linearBest = Long.MAX_VALUE;
+		Set<String> expected = null;
+		Set<String> actual = null;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			expected = patternLines(pattern, log);
+			patternBest = Math.min(patternBest, System.nanoTime() - start);
+			start = System.nanoTime();
+			actual = linearLines(linear, log);
+			linearBest = Math.min(linearBest, System.nanoTime() - start);
+		}
+		System.out.format("%-28s Pattern %10.2f ms   LinearRegex %8.2f ms   %s%n", name, patternBest / 1e6,
+				linearBest / 1e6, expected.equals(actual) ? expected.size() + " lines" : "RESULTS DIFFER");
+	}
+
+	public static void main(String[] args) {
+		String keyword = Keywords.keywordRegex(Keywords.sanitize("carol upload"));
+		compare("normal, 4MB log", keyword, ParallelLogSearchBenchmark.syntheticLog(4));
+		compare("long lines, no match", Keywords.keywordRegex("zzz"), adversarialLog(200, 400));
+		compare("long lines, many spaces", Keywords.keywordRegex("a b"),
+				ParallelLogSearchBenchmark.heapBuffer("x" + repeat(' ', 150) + "public[1]" + repeat(' ', 150) + "\n"));
+		// not reachable through sanitize(), but shows the bound holds for any pattern
+		compare("nested quantifier (a+)+b", "((a+)+b)", repeat('a', 24) + "\n");
+	}
+}
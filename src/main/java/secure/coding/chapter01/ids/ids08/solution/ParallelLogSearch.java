@@ -0,0 +1,191 @@
+package secure.coding.chapter01.ids.ids08.solution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a log into line-aligned chunks and searches them on a ForkJoinPool.
+ *
+ * The search patterns built by Keywords never match across a line terminator,
+ * so searching each chunk on its own region gives the same result set as one
+ * sequential scan. A deadline or a cancellation flag stops the search early;
+ * the matches found so far are returned and the result is marked incomplete.
+ */
+public class ParallelLogSearch {
+
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+
+	public ParallelLogSearch() {
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	public ParallelLogSearch(ForkJoinPool pool, int chunkSize) {
+		if (pool == null) {
+			throw new NullPointerException("pool");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	public static final class SearchResult {
+		private final Set<String> matches;
+		private final boolean complete;
+		private final int chunksSearched;
+		private final int chunksTotal;
+
+		SearchResult(Set<String> matches, boolean complete, int chunksSearched, int chunksTotal) {
+			this.matches = Collections.unmodifiableSet(matches);
+			this.complete = complete;
+			this.chunksSearched = chunksSearched;
+			this.chunksTotal = chunksTotal;
+		}
+
+		public Set<String> getMatches() {
+			return matches;
+		}
+
+		// false when the deadline expired or the search was cancelled
+		public boolean isComplete() {
+			return complete;
+		}
+
+		public int getChunksSearched() {
+			return chunksSearched;
+		}
+
+		public int getChunksTotal() {
+			return chunksTotal;
+		}
+	}
+
+	public SearchResult search(CharSequence log, Pattern pattern) {
+		return search(log, pattern, 0, TimeUnit.NANOSECONDS, null);
+	}
+
+	/**
+	 * @param timeout
+	 *            maximum time to spend searching, or 0 for no deadline
+	 * @param cancelled
+	 *            optional flag the caller may set to stop the search
+	 */
+	public SearchResult search(CharSequence log, Pattern pattern, long timeout, TimeUnit unit,
+			AtomicBoolean cancelled) {
+		long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0;
+		int[] bounds = chunkBounds(log, chunkSize);
+		int chunks = bounds.length - 1;
+		Search search = new Search(log, pattern, bounds, deadline, cancelled);
+		if (chunks > 0) {
+			pool.invoke(new ChunkTask(search, 0, chunks));
+		}
+		int searched = search.searched.get();
+		return new SearchResult(search.results, searched == chunks && !search.stopped, searched, chunks);
+	}
+
+	/**
+	 * Returns chunk start offsets followed by the end of the log. Every chunk
+	 * except the last ends just after a '\n'.
+	 */
+	static int[] chunkBounds(CharSequence log, int chunkSize) {
+		int length = log.length();
+		List<Integer> bounds = new ArrayList<>();
+		int start = 0;
+		while (start < length) {
+			bounds.add(start);
+			int end = (int) Math.min((long) start + chunkSize, length);
+			while (end < length && log.charAt(end - 1) != '\n') {
+				end++;
+			}
+			start = end;
+		}
+		bounds.add(length);
+		int[] result = new int[bounds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	private static final class Search {
+		final CharSequence log;
+		final Pattern pattern;
+		final int[] bounds;
+		final long deadline;
+		final AtomicBoolean cancelled;
+		final Set<String> results = ConcurrentHashMap.newKeySet();
+		final AtomicInteger searched = new AtomicInteger();
+		volatile boolean stopped;
+
+		Search(CharSequence log, Pattern pattern, int[] bounds, long deadline, AtomicBoolean cancelled) {
+			this.log = log;
+			this.pattern = pattern;
+			this.bounds = bounds;
+			this.deadline = deadline;
+			this.cancelled = cancelled;
+		}
+
+		boolean shouldStop() {
+			if (stopped) {
+				return true;
+			}
+			if ((cancelled != null && cancelled.get()) || (deadline != 0 && System.nanoTime() - deadline > 0)) {
+				stopped = true;
+			}
+			return stopped;
+		}
+
+		void searchChunk(int chunk) {
+			if (shouldStop()) {
+				return;
+			}
+			Matcher matcher = pattern.matcher(log);
+			matcher.region(bounds[chunk], bounds[chunk + 1]);
+			while (matcher.find()) {
+				results.add(matcher.group(1));
+				if (shouldStop()) {
+					return;
+				}
+			}
+			searched.incrementAndGet();
+		}
+	}
+
+	private static final class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Search search;
+		private final int from;
+		private final int to;
+
+		ChunkTask(Search search, int from, int to) {
+			this.search = search;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				search.searchChunk(from);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ChunkTask(search, from, mid), new ChunkTask(search, mid, to));
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package secure.coding.chapter01.ids.ids08.solution;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the speedup of ParallelLogSearch on 1, 4 and 16 worker threads
+ * against a synthetic log. Pass the log size in megabytes as the first argument.
+ */
+public class ParallelLogSearchBenchmark {
+
+	private static final int[] PARALLELISM = { 1, 4, 16 };
+	private static final int ROUNDS = 5;
+
+	static CharBuffer syntheticLog(int megabytes) {
+		String[] users = { "alice", "bob", "carol", "dave", "erin", "frank" };
+		String[] actions = { "login", "logout", "search", "upload", "download" };
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder(megabytes << 20);
+		int line = 0;
+		while (sb.length() < megabytes << 20) {
+			sb.append("2019-10-01 12:00:").append(line % 60).append(random.nextBoolean() ? " public[" : " private[")
+					.append(line).append("] ").append(users[random.nextInt(users.length)]).append(' ')
+					.append(actions[random.nextInt(actions.length)]).append(" item").append(random.nextInt(1000))
+					.append('\n');
+			line++;
+		}
+		return heapBuffer(sb);
+	}
+
+	// a heap buffer like the one CharsetDecoder.decode() returns for the real log
+	static CharBuffer heapBuffer(CharSequence text) {
+		char[] chars = new char[text.length()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = text.charAt(i);
+		}
+		return CharBuffer.wrap(chars);
+	}
+
+	public static void main(String[] args) {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		CharBuffer log = syntheticLog(megabytes);
+		Pattern pattern = Keywords.keywordPattern(Keywords.sanitize("carol upload"));
+		System.out.println("Log size: " + megabytes + "MB, available processors: "
+				+ Runtime.getRuntime().availableProcessors());
+
+		double baseline = 0;
+		for (int parallelism : PARALLELISM) {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				ParallelLogSearch search = new ParallelLogSearch(pool, ParallelLogSearch.DEFAULT_CHUNK_SIZE);
+				int found = search.search(log, pattern).getMatches().size(); // warm up
+				long best = Long.MAX_VALUE;
+				for (int i = 0; i < ROUNDS; i++) {
+					long start = System.nanoTime();
+					search.search(log, pattern);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				double millis = best / 1e6;
+				if (parallelism == 1) {
+					baseline = millis;
+				}
+				System.out.format("%2d threads: %8.1f ms, %6.0f MB/s, speedup %.2fx, %d matches%n", parallelism, millis,
+						megabytes * 1000 / millis, baseline / millis, found);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package secure.coding.chapter01.ids.ids08.solution;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded LRU cache of sanitized query to result set.
+ *
+ * Every entry is tagged with the version of the log snapshot it was computed
+ * from. A lookup with a newer version is a miss and drops the stale entry, so a
+ * reload invalidates the cache without a scan. The cache is bounded by an
+ * estimate of the heap its entries use, which is set as a fraction of the log
+ * size and follows the log when it is resized.
+ */
+public class SearchCache {
+
+	// rough heap cost of a cached String of n chars is STRING_OVERHEAD + 2n
+	private static final long STRING_OVERHEAD = 56;
+	private static final long ENTRY_OVERHEAD = 128;
+	private static final long SET_ENTRY_OVERHEAD = 48;
+
+	private final double fraction;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long maxBytes;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private static final class Entry {
+		final Set<String> result;
+		final long version;
+		final long bytes;
+
+		Entry(Set<String> result, long version, long bytes) {
+			this.result = result;
+			this.version = version;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * @param fraction
+	 *            the largest share of the log size the cache may use, for
+	 *            example 0.1 for 10%
+	 */
+	public SearchCache(double fraction, long logSize) {
+		if (!(fraction > 0 && fraction <= 1)) {
+			throw new IllegalArgumentException("fraction must be in (0, 1]: " + fraction);
+		}
+		this.fraction = fraction;
+		resize(logSize);
+	}
+
+	/**
+	 * Returns the cached result for the query computed from the given log
+	 * version, or null.
+	 */
+	public synchronized Set<String> get(String query, long version) {
+		Entry entry = entries.get(query);
+		if (entry != null && entry.version == version) {
+			hits++;
+			return entry.result;
+		}
+		if (entry != null) {
+			remove(query, entry);
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Caches the result and returns it as an unmodifiable set. Results larger
+	 * than the whole cache are returned without being cached.
+	 */
+	public synchronized Set<String> put(String query, long version, Set<String> result) {
+		Set<String> unmodifiable = Collections.unmodifiableSet(result);
+		long size = estimate(query, result);
+		Entry old = entries.get(query);
+		if (old != null) {
+			remove(query, old);
+		}
+		if (size <= maxBytes) {
+			entries.put(query, new Entry(unmodifiable, version, size));
+			bytes += size;
+			evict();
+		}
+		return unmodifiable;
+	}
+
+	/**
+	 * Drops every entry computed from a version older than the given one.
+	 */
+	public synchronized void invalidateBefore(long version) {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next().getValue();
+			if (entry.version < version) {
+				bytes -= entry.bytes;
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void resize(long logSize) {
+		maxBytes = (long) (logSize * fraction);
+		evict();
+	}
+
+	public synchronized double hitRatio() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	// estimated heap used by the cached entries
+	public synchronized long memoryBytes() {
+		return bytes;
+	}
+
+	public synchronized long maxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private void remove(String query, Entry entry) {
+		entries.remove(query);
+		bytes -= entry.bytes;
+	}
+
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			bytes -= it.next().bytes;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	static long estimate(String query, Set<String> result) {
+		long size = ENTRY_OVERHEAD + STRING_OVERHEAD + 2L * query.length();
+		for (String line : result) {
+			size += SET_ENTRY_OVERHEAD + STRING_OVERHEAD + 2L * line.length();
+		}
+		return size;
+	}
+}
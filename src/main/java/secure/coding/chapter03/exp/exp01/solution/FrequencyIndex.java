@@ -0,0 +1,185 @@
+package secure.coding.chapter03.exp.exp01.solution;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A collection that keeps the number of occurrences of every element, so the
+ * cardinality of the EXP01-J example is a lookup instead of a walk over the
+ * collection. Like the compliant cardinality, it counts null as an element
+ * and never dereferences it.
+ *
+ * The index wraps a backing collection and stays correct only while every
+ * change goes through the wrapper, as with Collections.synchronizedCollection.
+ * Elements must not change their equals or hashCode while they are in it.
+ */
+public class FrequencyIndex<E> extends AbstractCollection<E> {
+
+	// below this many elements a task counts instead of splitting
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+	private final Collection<E> backing;
+	private final Map<Object, Count> counts = new HashMap<>();
+
+	private static final class Count {
+		int value;
+	}
+
+	public FrequencyIndex(Collection<E> backing) {
+		this.backing = backing;
+		for (E element : backing) {
+			increment(element);
+		}
+	}
+
+	/**
+	 * The number of elements equal to obj, which may be null, in constant time.
+	 */
+	public int cardinality(Object obj) {
+		Count count = counts.get(obj);
+		return count == null ? 0 : count.value;
+	}
+
+	// the distinct elements, null included if present
+	public Set<Object> distinct() {
+		return Collections.unmodifiableSet(counts.keySet());
+	}
+
+	@Override
+	public boolean add(E element) {
+		if (!backing.add(element)) {
+			return false;
+		}
+		increment(element);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object obj) {
+		if (!counts.containsKey(obj) || !backing.remove(obj)) {
+			return false;
+		}
+		decrement(obj);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object obj) {
+		return counts.containsKey(obj);
+	}
+
+	@Override
+	public void clear() {
+		backing.clear();
+		counts.clear();
+	}
+
+	@Override
+	public int size() {
+		return backing.size();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		final Iterator<E> it = backing.iterator();
+		return new Iterator<E>() {
+			private E last;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public E next() {
+				last = it.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+				decrement(last);
+			}
+		};
+	}
+
+	/**
+	 * Counts the elements equal to obj, which may be null, on the common
+	 * fork/join pool. Meant for large collections that do not change while
+	 * they are counted; the work is divided with the collection's spliterator,
+	 * so it splits well only for collections such as ArrayList whose
+	 * spliterator splits evenly.
+	 */
+	public static int parallelCardinality(Object obj, Collection<?> col) {
+		return ForkJoinPool.commonPool().invoke(new CountTask(obj, col.spliterator()));
+	}
+
+	private void increment(Object element) {
+		Count count = counts.get(element);
+		if (count == null) {
+			count = new Count();
+			counts.put(element, count);
+		}
+		count.value++;
+	}
+
+	private void decrement(Object element) {
+		Count count = counts.get(element);
+		if (--count.value == 0) {
+			counts.remove(element);
+		}
+	}
+
+	private static final class CountTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+
+		private final Object obj;
+		private final Spliterator<?> spliterator;
+
+		CountTask(Object obj, Spliterator<?> spliterator) {
+			this.obj = obj;
+			this.spliterator = spliterator;
+		}
+
+		@Override
+		protected Integer compute() {
+			Spliterator<?> rest = spliterator;
+			CountTask forked = null;
+			if (rest.estimateSize() > SEQUENTIAL_THRESHOLD) {
+				Spliterator<?> prefix = rest.trySplit();
+				if (prefix != null) {
+					forked = new CountTask(obj, prefix);
+					forked.fork();
+				}
+			}
+			int count;
+			if (forked == null) {
+				count = countSequentially(rest);
+			} else {
+				count = new CountTask(obj, rest).compute();
+				count += forked.join();
+			}
+			return count;
+		}
+
+		private int countSequentially(Spliterator<?> part) {
+			final int[] count = new int[1];
+			part.forEachRemaining(elt -> {
+				if (Objects.equals(obj, elt)) {
+					count[0]++;
+				}
+			});
+			return count[0];
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package secure.coding.chapter03.exp.exp02.solution;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compares the contents of arrays, never their references. There are two
+ * kinds of comparison.
+ *
+ * mismatch returns the index of the first difference, and is as fast as the
+ * platform allows. Direct buffers are compared eight bytes at a time through
+ * getLong, which reads them natively. Heap arrays are compared byte by byte:
+ * on Java 8 a long read from a heap ByteBuffer or a LongBuffer view is put
+ * together from single bytes, and measures slower than the plain loop, which
+ * the JIT unrolls.
+ *
+ * constantTimeEquals is for secrets such as password hashes and MACs. Its
+ * time depends only on the length of the input, never on where the first
+ * difference is.
+ */
+public final class ArrayComparison {
+
+	private ArrayComparison() {
+	}
+
+	/**
+	 * The index of the first element that differs, the length of the shorter
+	 * array if one is a prefix of the other, or -1 if the arrays are equal.
+	 */
+	public static int mismatch(byte[] a, byte[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			if (a[i] != b[i]) {
+				return i;
+			}
+		}
+		return a.length == b.length ? -1 : length;
+	}
+
+	public static int mismatch(char[] a, char[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			if (a[i] != b[i]) {
+				return i;
+			}
+		}
+		return a.length == b.length ? -1 : length;
+	}
+
+	public static int mismatch(int[] a, int[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			if (a[i] != b[i]) {
+				return i;
+			}
+		}
+		return a.length == b.length ? -1 : length;
+	}
+
+	public static int mismatch(long[] a, long[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			if (a[i] != b[i]) {
+				return i;
+			}
+		}
+		return a.length == b.length ? -1 : length;
+	}
+
+	/**
+	 * The mismatch of the remaining bytes of two buffers, relative to their
+	 * positions. The positions are not changed.
+	 */
+	public static int mismatch(ByteBuffer a, ByteBuffer b) {
+		int length = Math.min(a.remaining(), b.remaining());
+		int i = 0;
+		if (a.isDirect() && b.isDirect()) {
+			ByteBuffer x = a.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer y = b.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			int ax = a.position();
+			int by = b.position();
+			for (; i + 8 <= length; i += 8) {
+				long diff = x.getLong(ax + i) ^ y.getLong(by + i);
+				if (diff != 0) {
+					// in little-endian order the lowest set bit is in the first differing byte
+					return i + (Long.numberOfTrailingZeros(diff) >> 3);
+				}
+			}
+		} else if (a.hasArray() && b.hasArray()) {
+			byte[] x = a.array();
+			byte[] y = b.array();
+			int ax = a.arrayOffset() + a.position();
+			int by = b.arrayOffset() + b.position();
+			for (; i < length; i++) {
+				if (x[ax + i] != y[by + i]) {
+					return i;
+				}
+			}
+		}
+		for (; i < length; i++) {
+			if (a.get(a.position() + i) != b.get(b.position() + i)) {
+				return i;
+			}
+		}
+		return a.remaining() == b.remaining() ? -1 : length;
+	}
+
+	/**
+	 * Compares a secret with an input without an early exit. The running time
+	 * depends on the length of actual only, so it reveals neither the position
+	 * of the first difference nor the contents of expected.
+	 */
+	public static boolean constantTimeEquals(byte[] expected, byte[] actual) {
+		int diff = expected.length ^ actual.length;
+		for (int i = 0; i < actual.length; i++) {
+			// the choice depends on the lengths only, which are not secret
+			diff |= actual[i] ^ (i < expected.length ? expected[i] : 0);
+		}
+		return diff == 0;
+	}
+
+	public static boolean constantTimeEquals(char[] expected, char[] actual) {
+		int diff = expected.length ^ actual.length;
+		for (int i = 0; i < actual.length; i++) {
+			diff |= actual[i] ^ (i < expected.length ? expected[i] : 0);
+		}
+		return diff == 0;
+	}
+}
@@ -0,0 +1,121 @@
+package secure.coding.chapter03.exp.exp02.solution;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times the comparisons of ArrayComparison against Arrays.equals and
+ * MessageDigest.isEqual on equal arrays of 16B to 16MB, including the long
+ * view of a heap buffer that ArrayComparison does not use. It then times the
+ * early-exit and the constant-time comparison of a 32 byte MAC that differs in
+ * its first or in its last byte: only the early exit should show a gap.
+ */
+public class ArrayComparisonBenchmark {
+
+	private static final long BYTES_PER_MEASUREMENT = 256L << 20;
+	private static final int ROUNDS = 5;
+
+	static long sink;
+
+	public static void main(String[] args) {
+		System.out.format("%-10s %12s %12s %12s %12s %12s %12s%n", "size", "equals", "mismatch", "direct",
+				"heap long", "const time", "isEqual");
+		for (int size = 16; size <= 16 << 20; size <<= 4) {
+			final byte[] a = new byte[size];
+			new Random(size).nextBytes(a);
+			final byte[] b = a.clone();
+			final ByteBuffer da = ByteBuffer.allocateDirect(size);
+			da.put(a).flip();
+			final ByteBuffer db = ByteBuffer.allocateDirect(size);
+			db.put(b).flip();
+			final ByteBuffer ha = ByteBuffer.wrap(a).order(ByteOrder.LITTLE_ENDIAN);
+			final ByteBuffer hb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+
+			double equals = gigabytesPerSecond(size, () -> Arrays.equals(a, b) ? 1 : 0);
+			double mismatch = gigabytesPerSecond(size, () -> ArrayComparison.mismatch(a, b));
+			double direct = gigabytesPerSecond(size, () -> ArrayComparison.mismatch(da, db));
+			double heapLong = gigabytesPerSecond(size, () -> heapLongMismatch(ha, hb));
+			double constantTime = gigabytesPerSecond(size, () -> ArrayComparison.constantTimeEquals(a, b) ? 1 : 0);
+			double isEqual = gigabytesPerSecond(size, () -> MessageDigest.isEqual(a, b) ? 1 : 0);
+			System.out.format("%-10s %9.2f GB/s %7.2f GB/s %7.2f GB/s %7.2f GB/s %7.2f GB/s %7.2f GB/s%n",
+					label(size), equals, mismatch, direct, heapLong, constantTime, isEqual);
+		}
+
+		System.out.println();
+		System.out.println("32 byte MAC, ns per comparison");
+		final byte[] mac = new byte[32];
+		new Random(7).nextBytes(mac);
+		final byte[] first = mac.clone();
+		first[0] ^= 1;
+		final byte[] last = mac.clone();
+		last[31] ^= 1;
+		System.out.format("  %-20s first byte %6.1f   last byte %6.1f%n", "Arrays.equals",
+				nanosPerCall(() -> Arrays.equals(mac, first) ? 1 : 0),
+				nanosPerCall(() -> Arrays.equals(mac, last) ? 1 : 0));
+		System.out.format("  %-20s first byte %6.1f   last byte %6.1f%n", "constantTimeEquals",
+				nanosPerCall(() -> ArrayComparison.constantTimeEquals(mac, first) ? 1 : 0),
+				nanosPerCall(() -> ArrayComparison.constantTimeEquals(mac, last) ? 1 : 0));
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	interface Comparison {
+		int compare();
+	}
+
+	// the approach ArrayComparison rejects for heap arrays
+	private static int heapLongMismatch(ByteBuffer a, ByteBuffer b) {
+		int length = Math.min(a.remaining(), b.remaining());
+		int i = 0;
+		for (; i + 8 <= length; i += 8) {
+			long diff = a.getLong(i) ^ b.getLong(i);
+			if (diff != 0) {
+				return i + (Long.numberOfTrailingZeros(diff) >> 3);
+			}
+		}
+		for (; i < length; i++) {
+			if (a.get(i) != b.get(i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static double gigabytesPerSecond(int size, Comparison comparison) {
+		long calls = Math.max(BYTES_PER_MEASUREMENT / size, 1);
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (long i = 0; i < calls; i++) {
+				sink += comparison.compare();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) calls * size / best;
+	}
+
+	private static double nanosPerCall(Comparison comparison) {
+		long calls = 10000000;
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (long i = 0; i < calls; i++) {
+				sink += comparison.compare();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / calls;
+	}
+
+	private static String label(int size) {
+		if (size >= 1 << 20) {
+			return (size >> 20) + "MB";
+		}
+		if (size >= 1 << 10) {
+			return (size >> 10) + "KB";
+		}
+		return size + "B";
+	}
+}
@@ -0,0 +1,197 @@
+package secure.coding.chapter03.exp.exp03.solution;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from int to int with open addressing and linear probing. Keys
+ * and values are stored unboxed, so lookups compare values and never
+ * references.
+ *
+ * Key 0 marks a free slot in the table and is kept aside. Removal shifts the
+ * following entries back instead of leaving tombstones, so lookups stay short
+ * however many keys have been removed.
+ */
+public class IntIntMap {
+
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+	private int threshold;
+	private boolean hasZeroKey;
+	private int zeroValue;
+
+	public IntIntMap() {
+		this(16);
+	}
+
+	public IntIntMap(int expectedSize) {
+		allocate(tableSize(expectedSize));
+	}
+
+	public int get(int key, int defaultValue) {
+		if (key == 0) {
+			return hasZeroKey ? zeroValue : defaultValue;
+		}
+		int slot = find(key);
+		return slot < 0 ? defaultValue : values[slot];
+	}
+
+	public boolean containsKey(int key) {
+		return key == 0 ? hasZeroKey : find(key) >= 0;
+	}
+
+	public void put(int key, int value) {
+		if (key == 0) {
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+			zeroValue = value;
+			return;
+		}
+		int slot = mix(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > threshold) {
+			rehash(keys.length * 2);
+		}
+	}
+
+	// adds delta to the value of the key, or to 0 if it is absent
+	public int addTo(int key, int delta) {
+		int value = get(key, 0) + delta;
+		put(key, value);
+		return value;
+	}
+
+	public boolean remove(int key) {
+		if (key == 0) {
+			if (!hasZeroKey) {
+				return false;
+			}
+			hasZeroKey = false;
+			size--;
+			return true;
+		}
+		int slot = find(key);
+		if (slot < 0) {
+			return false;
+		}
+		shiftKeys(slot);
+		size--;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		hasZeroKey = false;
+		size = 0;
+	}
+
+	public int[] keys() {
+		int[] result = new int[size];
+		int n = 0;
+		if (hasZeroKey) {
+			result[n++] = 0;
+		}
+		for (int key : keys) {
+			if (key != 0) {
+				result[n++] = key;
+			}
+		}
+		return result;
+	}
+
+	private int find(int key) {
+		int slot = mix(key) & mask;
+		int current;
+		while ((current = keys[slot]) != 0) {
+			if (current == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	// moves back every entry that can no longer be reached past the free slot
+	private void shiftKeys(int slot) {
+		while (true) {
+			int last = slot;
+			slot = (slot + 1) & mask;
+			int key;
+			while (true) {
+				if ((key = keys[slot]) == 0) {
+					keys[last] = 0;
+					return;
+				}
+				int home = mix(key) & mask;
+				if (last <= slot ? last >= home || home > slot : last >= home && home > slot) {
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[last] = key;
+			values[last] = values[slot];
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			int key = oldKeys[i];
+			if (key != 0) {
+				int slot = mix(key) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	static int tableSize(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Negative size: " + expectedSize);
+		}
+		long needed = (long) Math.ceil(expectedSize / LOAD_FACTOR) + 1;
+		if (needed > 1 << 30) {
+			throw new IllegalArgumentException("Too many entries: " + expectedSize);
+		}
+		return Math.max(Integer.highestOneBit((int) needed - 1) << 1, 4);
+	}
+
+	// spreads sequential keys over the table
+	static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,219 @@
+package secure.coding.chapter03.exp.exp04.solution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import secure.coding.chapter03.exp.exp03.solution.IntArrayList;
+import secure.coding.chapter03.exp.exp03.solution.IntIntMap;
+
+/**
+ * Compares the boxed collections of the EXP03-J and EXP04-J examples with
+ * IntArrayList, IntOpenHashSet, ShortOpenHashSet and IntIntMap: retained heap
+ * per element, measured after full collections, and the best time per
+ * operation over several rounds. Values lie outside the Integer cache, as in
+ * the Wrapper example.
+ *
+ * Run with a fixed heap, for example -Xms1g -Xmx1g, so the footprints are
+ * comparable.
+ */
+public class BoxedCollectionsBenchmark {
+
+	private static final int N = 1000000;
+	private static final int ROUNDS = 5;
+
+	static volatile Object sink;
+	static long checksum;
+
+	public static void main(String[] args) throws InterruptedException {
+		final int[] values = new int[N];
+		Random random = new Random(42);
+		for (int i = 0; i < N; i++) {
+			values[i] = 1000 + random.nextInt(Integer.MAX_VALUE - 1000);
+		}
+
+		System.out.println("retained heap, bytes per element");
+		footprint("ArrayList<Integer>", N, () -> {
+			List<Integer> list = new ArrayList<>();
+			for (int value : values) {
+				list.add(value);
+			}
+			return list;
+		});
+		footprint("IntArrayList", N, () -> {
+			IntArrayList list = new IntArrayList();
+			for (int value : values) {
+				list.add(value);
+			}
+			return list;
+		});
+		footprint("HashSet<Integer>", N, () -> {
+			Set<Integer> set = new HashSet<>();
+			for (int value : values) {
+				set.add(value);
+			}
+			return set;
+		});
+		footprint("IntOpenHashSet", N, () -> {
+			IntOpenHashSet set = new IntOpenHashSet();
+			for (int value : values) {
+				set.add(value);
+			}
+			return set;
+		});
+		footprint("HashSet<Short>", Short.MAX_VALUE, () -> {
+			Set<Short> set = new HashSet<>();
+			for (short i = 0; i < Short.MAX_VALUE; i++) {
+				set.add(i);
+			}
+			return set;
+		});
+		footprint("ShortOpenHashSet", Short.MAX_VALUE, () -> {
+			ShortOpenHashSet set = new ShortOpenHashSet();
+			for (short i = 0; i < Short.MAX_VALUE; i++) {
+				set.add(i);
+			}
+			return set;
+		});
+		footprint("HashMap<Integer,Integer>", N, () -> {
+			Map<Integer, Integer> map = new HashMap<>();
+			for (int value : values) {
+				map.put(value, value);
+			}
+			return map;
+		});
+		footprint("IntIntMap", N, () -> {
+			IntIntMap map = new IntIntMap();
+			for (int value : values) {
+				map.put(value, value);
+			}
+			return map;
+		});
+
+		System.out.println();
+		System.out.println("best time per operation, ns");
+		throughput("ArrayList<Integer> add+get", 2 * N, () -> {
+			List<Integer> list = new ArrayList<>();
+			for (int value : values) {
+				list.add(value);
+			}
+			long sum = 0;
+			for (int i = 0; i < list.size(); i++) {
+				sum += list.get(i);
+			}
+			return sum;
+		});
+		throughput("IntArrayList add+get", 2 * N, () -> {
+			IntArrayList list = new IntArrayList();
+			for (int value : values) {
+				list.add(value);
+			}
+			long sum = 0;
+			for (int i = 0; i < list.size(); i++) {
+				sum += list.get(i);
+			}
+			return sum;
+		});
+		throughput("HashSet<Integer> add+contains", 2 * N, () -> {
+			Set<Integer> set = new HashSet<>();
+			for (int value : values) {
+				set.add(value);
+			}
+			long found = 0;
+			for (int value : values) {
+				if (set.contains(value + 1)) {
+					found++;
+				}
+			}
+			return found;
+		});
+		throughput("IntOpenHashSet add+contains", 2 * N, () -> {
+			IntOpenHashSet set = new IntOpenHashSet();
+			for (int value : values) {
+				set.add(value);
+			}
+			long found = 0;
+			for (int value : values) {
+				if (set.contains(value + 1)) {
+					found++;
+				}
+			}
+			return found;
+		});
+		// the loop of ShortSetExample, with the cast of the compliant solution
+		throughput("HashSet<Short> add+remove", 2 * 30 * Short.MAX_VALUE, () -> {
+			long size = 0;
+			for (int round = 0; round < 30; round++) {
+				Set<Short> set = new HashSet<>();
+				for (short i = 0; i < Short.MAX_VALUE; i++) {
+					set.add(i);
+					set.remove((short) (i - 1));
+				}
+				size += set.size();
+			}
+			return size;
+		});
+		throughput("ShortOpenHashSet add+remove", 2 * 30 * Short.MAX_VALUE, () -> {
+			long size = 0;
+			for (int round = 0; round < 30; round++) {
+				ShortOpenHashSet set = new ShortOpenHashSet();
+				for (short i = 0; i < Short.MAX_VALUE; i++) {
+					set.add(i);
+					set.remove((short) (i - 1));
+				}
+				size += set.size();
+			}
+			return size;
+		});
+		throughput("HashMap<Integer,Integer> count", N, () -> {
+			Map<Integer, Integer> map = new HashMap<>();
+			for (int value : values) {
+				map.merge(value & 0xFFFF, 1, Integer::sum);
+			}
+			return map.size();
+		});
+		throughput("IntIntMap count", N, () -> {
+			IntIntMap map = new IntIntMap();
+			for (int value : values) {
+				map.addTo(value & 0xFFFF, 1);
+			}
+			return map.size();
+		});
+		System.out.println("(checksum " + checksum + ")");
+	}
+
+	private static void footprint(String name, int elements, Supplier<Object> build) throws InterruptedException {
+		// measured with and then without the collection, so leftovers of
+		// earlier measurements count on both sides
+		sink = build.get();
+		long with = usedAfterGc();
+		sink = null;
+		long without = usedAfterGc();
+		System.out.format("  %-32s %8.1f%n", name, (with - without) / (double) elements);
+	}
+
+	private static void throughput(String name, long operations, Supplier<Object> work) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			Object result = work.get();
+			best = Math.min(best, System.nanoTime() - start);
+			checksum += result.hashCode();
+		}
+		System.out.format("  %-32s %8.1f%n", name, best / (double) operations);
+	}
+
+	private static long usedAfterGc() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,173 @@
+package secure.coding.chapter03.exp.exp04.solution;
+
+import java.util.Arrays;
+
+/**
+ * A hash set of int values with open addressing and linear probing. The
+ * methods take an int, so a value of another type is widened or rejected by
+ * the compiler instead of being boxed into an object that never matches.
+ *
+ * Value 0 marks a free slot in the table and is kept aside. Removal shifts the
+ * following values back instead of leaving tombstones.
+ */
+public class IntOpenHashSet {
+
+	static final float LOAD_FACTOR = 0.75f;
+
+	private int[] keys;
+	private int mask;
+	private int size;
+	private int threshold;
+	private boolean hasZero;
+
+	public IntOpenHashSet() {
+		this(16);
+	}
+
+	public IntOpenHashSet(int expectedSize) {
+		allocate(tableSize(expectedSize));
+	}
+
+	public boolean add(int value) {
+		if (value == 0) {
+			if (hasZero) {
+				return false;
+			}
+			hasZero = true;
+			size++;
+			return true;
+		}
+		int slot = mix(value) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == value) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = value;
+		if (++size > threshold) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+
+	public boolean contains(int value) {
+		return value == 0 ? hasZero : find(value) >= 0;
+	}
+
+	public boolean remove(int value) {
+		if (value == 0) {
+			if (!hasZero) {
+				return false;
+			}
+			hasZero = false;
+			size--;
+			return true;
+		}
+		int slot = find(value);
+		if (slot < 0) {
+			return false;
+		}
+		shiftKeys(slot);
+		size--;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		hasZero = false;
+		size = 0;
+	}
+
+	public int[] toArray() {
+		int[] result = new int[size];
+		int n = 0;
+		if (hasZero) {
+			result[n++] = 0;
+		}
+		for (int key : keys) {
+			if (key != 0) {
+				result[n++] = key;
+			}
+		}
+		return result;
+	}
+
+	private int find(int value) {
+		int slot = mix(value) & mask;
+		int current;
+		while ((current = keys[slot]) != 0) {
+			if (current == value) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	// moves back every value that can no longer be reached past the free slot
+	private void shiftKeys(int slot) {
+		while (true) {
+			int last = slot;
+			slot = (slot + 1) & mask;
+			int key;
+			while (true) {
+				if ((key = keys[slot]) == 0) {
+					keys[last] = 0;
+					return;
+				}
+				int home = mix(key) & mask;
+				if (last <= slot ? last >= home || home > slot : last >= home && home > slot) {
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[last] = key;
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] old = keys;
+		allocate(capacity);
+		for (int key : old) {
+			if (key != 0) {
+				int slot = mix(key) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	static int tableSize(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Negative size: " + expectedSize);
+		}
+		long needed = (long) Math.ceil(expectedSize / LOAD_FACTOR) + 1;
+		if (needed > 1 << 30) {
+			throw new IllegalArgumentException("Too many elements: " + expectedSize);
+		}
+		return Math.max(Integer.highestOneBit((int) needed - 1) << 1, 4);
+	}
+
+	// spreads sequential values over the table
+	static int mix(int value) {
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,152 @@
+package secure.coding.chapter03.exp.exp04.solution;
+
+import java.util.Arrays;
+
+/**
+ * A hash set of short values with open addressing and linear probing, laid
+ * out like IntOpenHashSet. The methods take a short, so the remove(i - 1) of
+ * the noncompliant ShortSetExample does not compile: the int has to be cast
+ * back to short, which is what the compliant solution does by hand.
+ */
+public class ShortOpenHashSet {
+
+	private short[] keys;
+	private int mask;
+	private int size;
+	private int threshold;
+	private boolean hasZero;
+
+	public ShortOpenHashSet() {
+		this(16);
+	}
+
+	public ShortOpenHashSet(int expectedSize) {
+		allocate(IntOpenHashSet.tableSize(Math.min(expectedSize, 1 << 16)));
+	}
+
+	public boolean add(short value) {
+		if (value == 0) {
+			if (hasZero) {
+				return false;
+			}
+			hasZero = true;
+			size++;
+			return true;
+		}
+		int slot = IntOpenHashSet.mix(value) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == value) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = value;
+		if (++size > threshold) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+
+	public boolean contains(short value) {
+		return value == 0 ? hasZero : find(value) >= 0;
+	}
+
+	public boolean remove(short value) {
+		if (value == 0) {
+			if (!hasZero) {
+				return false;
+			}
+			hasZero = false;
+			size--;
+			return true;
+		}
+		int slot = find(value);
+		if (slot < 0) {
+			return false;
+		}
+		shiftKeys(slot);
+		size--;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, (short) 0);
+		hasZero = false;
+		size = 0;
+	}
+
+	public short[] toArray() {
+		short[] result = new short[size];
+		int n = 0;
+		if (hasZero) {
+			result[n++] = 0;
+		}
+		for (short key : keys) {
+			if (key != 0) {
+				result[n++] = key;
+			}
+		}
+		return result;
+	}
+
+	private int find(short value) {
+		int slot = IntOpenHashSet.mix(value) & mask;
+		short current;
+		while ((current = keys[slot]) != 0) {
+			if (current == value) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	// moves back every value that can no longer be reached past the free slot
+	private void shiftKeys(int slot) {
+		while (true) {
+			int last = slot;
+			slot = (slot + 1) & mask;
+			short key;
+			while (true) {
+				if ((key = keys[slot]) == 0) {
+					keys[last] = 0;
+					return;
+				}
+				int home = IntOpenHashSet.mix(key) & mask;
+				if (last <= slot ? last >= home || home > slot : last >= home && home > slot) {
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[last] = key;
+		}
+	}
+
+	private void rehash(int capacity) {
+		short[] old = keys;
+		allocate(capacity);
+		for (short key : old) {
+			if (key != 0) {
+				int slot = IntOpenHashSet.mix(key) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new short[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * IntOpenHashSet.LOAD_FACTOR);
+	}
+}
@@ -0,0 +1,166 @@
+package secure.coding.chapter04.num.num00;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @rule: NUM00-J. Detect or prevent integer overflow
+ *
+ * @description: A counter like the itemsInInventory of AtomicIntegerExample
+ *               that never goes past its limit, Integer.MAX_VALUE by default,
+ *               and scales with the number of threads.
+ *
+ *               Threads increment one of several cells, each on its own cache
+ *               line, chosen by thread. A cell does not count up; it holds
+ *               permits, a slice of the headroom left below the limit that it
+ *               took from the shared reservation. An increment takes one
+ *               permit from its cell, and only an empty cell touches the
+ *               shared reservation. The slices get smaller as the limit comes
+ *               near, and once all the headroom is reserved an increment takes
+ *               its permit from any cell that still has one. Since every
+ *               increment consumes a permit, and no more permits than the
+ *               headroom are ever handed out, the count cannot pass the limit.
+ */
+public class BoundedStripedCounter {
+
+	private static final int MAX_SLICE = 1024;
+	private static final int MAX_CELLS = 256;
+
+	private final long limit;
+	// the initial value plus every permit handed to a cell
+	private final AtomicLong reserved;
+	// refills between their reservation and the permits reaching the cell
+	private final AtomicInteger refilling = new AtomicInteger();
+	private final Cell[] cells;
+
+	public BoundedStripedCounter(int initialValue) {
+		this(initialValue, Integer.MAX_VALUE);
+	}
+
+	public BoundedStripedCounter(int initialValue, int limit) {
+		if (initialValue > limit) {
+			throw new IllegalArgumentException("Initial value " + initialValue + " is above the limit " + limit);
+		}
+		this.limit = limit;
+		this.reserved = new AtomicLong(initialValue);
+		int count = 1;
+		while (count < 2 * Runtime.getRuntime().availableProcessors() && count < MAX_CELLS) {
+			count <<= 1;
+		}
+		cells = new Cell[count];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = new Cell();
+		}
+	}
+
+	/**
+	 * @description: Adds one, or throws an ArithmeticException if the counter
+	 *               is at its limit, like AtomicIntegerExample.nextItem.
+	 */
+	public void increment() {
+		if (!tryIncrement()) {
+			throw new ArithmeticException("Integer overflow");
+		}
+	}
+
+	// adds one and returns true, or returns false if the counter is at its limit
+	public boolean tryIncrement() {
+		Cell cell = cells[index()];
+		return cell.take() || refill(cell);
+	}
+
+	/**
+	 * @description: The current value. Like LongAdder.sum it is exact only
+	 *               when no increment is in progress, but it is never above
+	 *               the limit.
+	 */
+	public int get() {
+		long unused = 0;
+		for (Cell cell : cells) {
+			unused += cell.permits;
+		}
+		return (int) (reserved.get() - unused);
+	}
+
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	private int index() {
+		long id = Thread.currentThread().getId();
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & (cells.length - 1);
+	}
+
+	// reserves a new slice for the cell and uses its first permit
+	private boolean refill(Cell cell) {
+		refilling.incrementAndGet();
+		try {
+			while (true) {
+				long current = reserved.get();
+				long headroom = limit - current;
+				if (headroom <= 0) {
+					break;
+				}
+				long slice = Math.max(1, Math.min(MAX_SLICE, headroom / (2 * cells.length)));
+				if (reserved.compareAndSet(current, current + slice)) {
+					cell.give((int) slice - 1);
+					return true;
+				}
+			}
+		} finally {
+			refilling.decrementAndGet();
+		}
+		return steal();
+	}
+
+	private boolean steal() {
+		while (true) {
+			// a refill still running may be about to give a cell its permits
+			boolean pending = refilling.get() > 0;
+			for (Cell cell : cells) {
+				if (cell.take()) {
+					return true;
+				}
+			}
+			if (!pending) {
+				return false;
+			}
+			Thread.yield();
+		}
+	}
+
+	// padding that keeps permits of two cells off the same cache line
+	abstract static class CellPadding {
+		long p0, p1, p2, p3, p4, p5, p6;
+	}
+
+	abstract static class CellPermits extends CellPadding {
+		volatile int permits;
+	}
+
+	static final class Cell extends CellPermits {
+		private static final AtomicIntegerFieldUpdater<CellPermits> PERMITS = AtomicIntegerFieldUpdater
+				.newUpdater(CellPermits.class, "permits");
+
+		long q0, q1, q2, q3, q4, q5, q6;
+
+		boolean take() {
+			while (true) {
+				int current = permits;
+				if (current == 0) {
+					return false;
+				}
+				if (PERMITS.compareAndSet(this, current, current - 1)) {
+					return true;
+				}
+			}
+		}
+
+		void give(int count) {
+			if (count > 0) {
+				PERMITS.getAndAdd(this, count);
+			}
+		}
+	}
+}
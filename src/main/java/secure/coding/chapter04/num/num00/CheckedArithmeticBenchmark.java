@@ -0,0 +1,126 @@
+package secure.coding.chapter04.num.num00;
+
+import java.util.Random;
+
+/**
+ * @rule: NUM00-J. Detect or prevent integer overflow
+ *
+ * @description: Times the multAccum variants of IntegerOperations against
+ *               CheckedMath and the unchecked original. Each variant folds
+ *               the same array of values that never overflow, so only the
+ *               cost of the check is measured. Run it with
+ *               -Dsecure.coding.checkedmath.precondition=true to time
+ *               CheckedMath on its fallback path.
+ */
+public class CheckedArithmeticBenchmark {
+
+	private static final int VALUES = 1024;
+	private static final int PASSES = 20000;
+	private static final int ROUNDS = 5;
+
+	static long sink;
+
+	interface Accumulation {
+		long fold(int[] values, long[] longValues, int scale);
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		int[] values = new int[VALUES];
+		long[] longValues = new long[VALUES];
+		for (int i = 0; i < VALUES; i++) {
+			values[i] = random.nextInt(2001) - 1000;
+			longValues[i] = values[i] * 1000000L;
+		}
+		int scale = 7;
+
+		System.out.println("CheckedMath on the " + (CheckedMath.PRECONDITION ? "precondition" : "Math.*Exact")
+				+ " path");
+		System.out.format("%-28s %10s%n", "multAccum", "ns/op");
+		report("unchecked", values, longValues, scale, CheckedArithmeticBenchmark::unchecked);
+		report("precondition", values, longValues, scale, CheckedArithmeticBenchmark::precondition);
+		report("upcasting", values, longValues, scale, CheckedArithmeticBenchmark::upcasting);
+		report("BigInteger", values, longValues, scale, CheckedArithmeticBenchmark::bigInteger);
+		report("Math.*Exact", values, longValues, scale, CheckedArithmeticBenchmark::exact);
+		report("CheckedMath", values, longValues, scale, CheckedArithmeticBenchmark::checkedMath);
+		report("long precondition", values, longValues, scale, CheckedArithmeticBenchmark::longPrecondition);
+		report("long CheckedMath", values, longValues, scale, CheckedArithmeticBenchmark::longCheckedMath);
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static long unchecked(int[] values, long[] longValues, int scale) {
+		int acc = 0;
+		for (int value : values) {
+			acc = IntegerOperations._multAccum(acc, value, scale);
+		}
+		return acc;
+	}
+
+	private static long precondition(int[] values, long[] longValues, int scale) {
+		int acc = 0;
+		for (int value : values) {
+			acc = IntegerOperations.multAccumWithPreConditionTest(acc, value, scale);
+		}
+		return acc;
+	}
+
+	private static long upcasting(int[] values, long[] longValues, int scale) {
+		int acc = 0;
+		for (int value : values) {
+			acc = IntegerOperations.multAccumWithUpcasting(acc, value, scale);
+		}
+		return acc;
+	}
+
+	private static long bigInteger(int[] values, long[] longValues, int scale) {
+		int acc = 0;
+		for (int value : values) {
+			acc = IntegerOperations.multAccumWithBigInteger(acc, value, scale);
+		}
+		return acc;
+	}
+
+	private static long exact(int[] values, long[] longValues, int scale) {
+		int acc = 0;
+		for (int value : values) {
+			acc = Math.addExact(acc, Math.multiplyExact(value, scale));
+		}
+		return acc;
+	}
+
+	private static long checkedMath(int[] values, long[] longValues, int scale) {
+		int acc = 0;
+		for (int value : values) {
+			acc = CheckedMath.multAccum(acc, value, scale);
+		}
+		return acc;
+	}
+
+	private static long longPrecondition(int[] values, long[] longValues, int scale) {
+		long acc = 0;
+		for (long value : longValues) {
+			acc = CheckedMath.Precondition.multAccum(acc, value, scale);
+		}
+		return acc;
+	}
+
+	private static long longCheckedMath(int[] values, long[] longValues, int scale) {
+		long acc = 0;
+		for (long value : longValues) {
+			acc = CheckedMath.multAccum(acc, value, scale);
+		}
+		return acc;
+	}
+
+	private static void report(String name, int[] values, long[] longValues, int scale, Accumulation accumulation) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int pass = 0; pass < PASSES; pass++) {
+				sink += accumulation.fold(values, longValues, scale);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.format("%-28s %10.2f%n", name, (double) best / PASSES / VALUES);
+	}
+}
@@ -0,0 +1,117 @@
+package secure.coding.chapter04.num.num00;
+
+/**
+ * @rule: NUM00-J. Detect or prevent integer overflow
+ *
+ * @description: Checked operations over whole int arrays, with the results
+ *               and the exceptions of the element-wise loops of safeAdd and
+ *               safeMultiply.
+ *
+ *               The arrays are processed in blocks. A first loop over a block
+ *               adds the values in int and ORs their magnitudes together; it
+ *               has no branch, so the JIT can unroll and vectorize it. The
+ *               highest bit of the OR bounds every value of the block, which
+ *               bounds every partial result, and a single test per block
+ *               shows that none of them can overflow. Otherwise the block is
+ *               computed again in long, element by element, and the exception
+ *               is thrown at the element where the element-wise loop would
+ *               throw it.
+ */
+public final class CheckedArrays {
+
+	// small enough that values up to 2^23 in magnitude take the fast path
+	static final int BLOCK = 256;
+
+	private CheckedArrays() {
+	}
+
+	/**
+	 * @description: The sum of the values, checked like a loop of safeAdd
+	 *               starting from 0: the exception is thrown as soon as a
+	 *               partial sum leaves the int range, even if the total would
+	 *               be back in range.
+	 */
+	public static int checkedSum(int[] values) {
+		return checkedMultAccum(0, values, 1);
+	}
+
+	/**
+	 * @description: acc + values[0] * scale + values[1] * scale + ..., checked
+	 *               like a loop of multAccumWithPreConditionTest.
+	 */
+	public static int checkedMultAccum(int acc, int[] values, int scale) {
+		long scaleBound = Math.abs((long) scale);
+		for (int from = 0; from < values.length; from += BLOCK) {
+			int to = Math.min(from + BLOCK, values.length);
+			int sum = 0;
+			int magnitudes = 0;
+			for (int i = from; i < to; i++) {
+				int value = values[i];
+				sum += value;
+				// |value| - 1 for a negative value, value itself otherwise
+				magnitudes |= value ^ (value >> 31);
+			}
+			// every value of the block is at most valueBound in magnitude
+			long valueBound = 1L << (32 - Integer.numberOfLeadingZeros(magnitudes));
+			long blockBound = (to - from) * valueBound;
+			if (blockBound <= Integer.MAX_VALUE && valueBound * scaleBound <= Integer.MAX_VALUE
+					&& acc + blockBound * scaleBound <= Integer.MAX_VALUE
+					&& acc - blockBound * scaleBound >= Integer.MIN_VALUE) {
+				acc += sum * scale;
+			} else {
+				acc = multAccumElementwise(acc, values, scale, from, to);
+			}
+		}
+		return acc;
+	}
+
+	/**
+	 * @description: acc[i] = acc[i] + values[i] * scale for every i, checked
+	 *               like multAccumWithPreConditionTest. The elements before
+	 *               the one that overflows are updated, the others are not.
+	 *               Returns acc.
+	 */
+	public static int[] checkedMultAccum(int[] acc, int[] values, int scale) {
+		if (acc.length != values.length) {
+			throw new IllegalArgumentException("Arrays differ in length: " + acc.length + " and " + values.length);
+		}
+		long scaleBound = Math.abs((long) scale);
+		for (int from = 0; from < acc.length; from += BLOCK) {
+			int to = Math.min(from + BLOCK, acc.length);
+			int accMagnitudes = 0;
+			int valueMagnitudes = 0;
+			for (int i = from; i < to; i++) {
+				accMagnitudes |= acc[i] ^ (acc[i] >> 31);
+				valueMagnitudes |= values[i] ^ (values[i] >> 31);
+			}
+			long accBound = 1L << (32 - Integer.numberOfLeadingZeros(accMagnitudes));
+			long productBound = (1L << (32 - Integer.numberOfLeadingZeros(valueMagnitudes))) * scaleBound;
+			if (accBound + productBound <= Integer.MAX_VALUE) {
+				for (int i = from; i < to; i++) {
+					acc[i] += values[i] * scale;
+				}
+			} else {
+				for (int i = from; i < to; i++) {
+					acc[i] = multAccumElementwise(acc[i], values, scale, i, i + 1);
+				}
+			}
+		}
+		return acc;
+	}
+
+	// the checks of safeAdd(acc, safeMultiply(value, scale)) done in long
+	private static int multAccumElementwise(int acc, int[] values, int scale, int from, int to) {
+		long result = acc;
+		for (int i = from; i < to; i++) {
+			long product = (long) values[i] * scale;
+			if (product != (int) product) {
+				throw new ArithmeticException("Integer overflow");
+			}
+			result += product;
+			if (result != (int) result) {
+				throw new ArithmeticException("Integer overflow");
+			}
+		}
+		return (int) result;
+	}
+}
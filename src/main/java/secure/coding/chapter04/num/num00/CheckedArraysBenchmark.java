@@ -0,0 +1,102 @@
+package secure.coding.chapter04.num.num00;
+
+import static secure.coding.chapter04.num.num00.PreConditionTesting.safeAdd;
+import static secure.coding.chapter04.num.num00.PreConditionTesting.safeMultiply;
+
+import java.util.Random;
+
+/**
+ * @rule: NUM00-J. Detect or prevent integer overflow
+ *
+ * @description: Times the bulk operations of CheckedArrays against the loops
+ *               of safeAdd and safeMultiply they replace, and against the
+ *               unchecked loops, over 4M values that do not overflow.
+ */
+public class CheckedArraysBenchmark {
+
+	private static final int SIZE = 4 << 20;
+	private static final int ROUNDS = 10;
+
+	static long sink;
+
+	interface Operation {
+		long run();
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		final int[] values = new int[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			values[i] = random.nextInt(2001) - 1000;
+		}
+		final int[] acc = new int[SIZE];
+		final int scale = 7;
+
+		System.out.format("%-30s %8s%n", "", "ns/elem");
+		report("sum unchecked", () -> {
+			int sum = 0;
+			for (int value : values) {
+				sum += value;
+			}
+			return sum;
+		});
+		report("sum safeAdd", () -> {
+			int sum = 0;
+			for (int value : values) {
+				sum = safeAdd(sum, value);
+			}
+			return sum;
+		});
+		report("sum Math.addExact", () -> {
+			int sum = 0;
+			for (int value : values) {
+				sum = Math.addExact(sum, value);
+			}
+			return sum;
+		});
+		report("checkedSum", () -> CheckedArrays.checkedSum(values));
+		report("multAccum unchecked", () -> {
+			int sum = 0;
+			for (int value : values) {
+				sum += value * scale;
+			}
+			return sum;
+		});
+		report("multAccum precondition", () -> {
+			int sum = 0;
+			for (int value : values) {
+				sum = safeAdd(sum, safeMultiply(value, scale));
+			}
+			return sum;
+		});
+		report("checkedMultAccum", () -> CheckedArrays.checkedMultAccum(0, values, scale));
+		// the array versions alternate the sign of scale so acc stays small
+		report("array multAccum unchecked", () -> {
+			int s = sink % 2 == 0 ? scale : -scale;
+			for (int i = 0; i < SIZE; i++) {
+				acc[i] += values[i] * s;
+			}
+			return acc[0];
+		});
+		report("array multAccum precondition", () -> {
+			int s = sink % 2 == 0 ? scale : -scale;
+			for (int i = 0; i < SIZE; i++) {
+				acc[i] = safeAdd(acc[i], safeMultiply(values[i], s));
+			}
+			return acc[0];
+		});
+		report("array checkedMultAccum", () -> CheckedArrays.checkedMultAccum(acc, values, sink % 2 == 0 ? scale
+				: -scale)[0]);
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static void report(String name, Operation operation) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.format("%-30s %8.3f%n", name, (double) best / SIZE);
+	}
+}
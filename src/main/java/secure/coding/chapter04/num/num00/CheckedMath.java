@@ -0,0 +1,264 @@
+package secure.coding.chapter04.num.num00;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+/**
+ * @rule: NUM00-J. Detect or prevent integer overflow
+ *
+ * @description: Checked arithmetic on int and long. Every method throws an
+ *               ArithmeticException instead of returning a wrapped result.
+ *
+ *               The methods use Math.addExact, multiplyExact and the other
+ *               *Exact methods, which HotSpot replaces with the machine
+ *               instruction and a test of the overflow flag. The nested
+ *               Precondition class checks the operands first, as
+ *               PreConditionTesting does, and gives the same results and the
+ *               same exception messages as Math. It is used instead when the
+ *               system property secure.coding.checkedmath.precondition is true,
+ *               for a VM without the intrinsics. The property is read once, so
+ *               the JIT drops the branch that is not taken.
+ */
+public final class CheckedMath {
+
+	static final boolean PRECONDITION = readFlag("secure.coding.checkedmath.precondition");
+
+	private CheckedMath() {
+	}
+
+	public static int add(int left, int right) {
+		return PRECONDITION ? Precondition.add(left, right) : Math.addExact(left, right);
+	}
+
+	public static long add(long left, long right) {
+		return PRECONDITION ? Precondition.add(left, right) : Math.addExact(left, right);
+	}
+
+	public static int subtract(int left, int right) {
+		return PRECONDITION ? Precondition.subtract(left, right) : Math.subtractExact(left, right);
+	}
+
+	public static long subtract(long left, long right) {
+		return PRECONDITION ? Precondition.subtract(left, right) : Math.subtractExact(left, right);
+	}
+
+	public static int multiply(int left, int right) {
+		return PRECONDITION ? Precondition.multiply(left, right) : Math.multiplyExact(left, right);
+	}
+
+	public static long multiply(long left, long right) {
+		return PRECONDITION ? Precondition.multiply(left, right) : Math.multiplyExact(left, right);
+	}
+
+	public static int increment(int a) {
+		return PRECONDITION ? Precondition.increment(a) : Math.incrementExact(a);
+	}
+
+	public static long increment(long a) {
+		return PRECONDITION ? Precondition.increment(a) : Math.incrementExact(a);
+	}
+
+	public static int decrement(int a) {
+		return PRECONDITION ? Precondition.decrement(a) : Math.decrementExact(a);
+	}
+
+	public static long decrement(long a) {
+		return PRECONDITION ? Precondition.decrement(a) : Math.decrementExact(a);
+	}
+
+	public static int negate(int a) {
+		return PRECONDITION ? Precondition.negate(a) : Math.negateExact(a);
+	}
+
+	public static long negate(long a) {
+		return PRECONDITION ? Precondition.negate(a) : Math.negateExact(a);
+	}
+
+	public static int toInt(long value) {
+		return PRECONDITION ? Precondition.toInt(value) : Math.toIntExact(value);
+	}
+
+	// Math has no exact abs and divide; both are a single comparison anyway
+
+	public static int abs(int a) {
+		return Precondition.abs(a);
+	}
+
+	public static long abs(long a) {
+		return Precondition.abs(a);
+	}
+
+	public static int divide(int left, int right) {
+		return Precondition.divide(left, right);
+	}
+
+	public static long divide(long left, long right) {
+		return Precondition.divide(left, right);
+	}
+
+	/**
+	 * @description: The checked oldAcc + newVal * scale of
+	 *               IntegerOperations.
+	 */
+	public static int multAccum(int oldAcc, int newVal, int scale) {
+		return add(oldAcc, multiply(newVal, scale));
+	}
+
+	public static long multAccum(long oldAcc, long newVal, long scale) {
+		return add(oldAcc, multiply(newVal, scale));
+	}
+
+	/**
+	 * @description: The checks of PreConditionTesting for int and long, with
+	 *               the messages of Math so both paths are interchangeable.
+	 */
+	public static final class Precondition {
+
+		private Precondition() {
+		}
+
+		public static int add(int left, int right) {
+			if (right > 0 ? left > Integer.MAX_VALUE - right : left < Integer.MIN_VALUE - right) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return left + right;
+		}
+
+		public static long add(long left, long right) {
+			if (right > 0 ? left > Long.MAX_VALUE - right : left < Long.MIN_VALUE - right) {
+				throw new ArithmeticException("long overflow");
+			}
+			return left + right;
+		}
+
+		public static int subtract(int left, int right) {
+			if (right > 0 ? left < Integer.MIN_VALUE + right : left > Integer.MAX_VALUE + right) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return left - right;
+		}
+
+		public static long subtract(long left, long right) {
+			if (right > 0 ? left < Long.MIN_VALUE + right : left > Long.MAX_VALUE + right) {
+				throw new ArithmeticException("long overflow");
+			}
+			return left - right;
+		}
+
+		public static int multiply(int left, int right) {
+			if (right > 0 ? left > Integer.MAX_VALUE / right || left < Integer.MIN_VALUE / right
+					: (right < -1 ? left > Integer.MIN_VALUE / right || left < Integer.MAX_VALUE / right
+							: right == -1 && left == Integer.MIN_VALUE)) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return left * right;
+		}
+
+		public static long multiply(long left, long right) {
+			if (right > 0 ? left > Long.MAX_VALUE / right || left < Long.MIN_VALUE / right
+					: (right < -1 ? left > Long.MIN_VALUE / right || left < Long.MAX_VALUE / right
+							: right == -1 && left == Long.MIN_VALUE)) {
+				throw new ArithmeticException("long overflow");
+			}
+			return left * right;
+		}
+
+		public static int increment(int a) {
+			if (a == Integer.MAX_VALUE) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return a + 1;
+		}
+
+		public static long increment(long a) {
+			if (a == Long.MAX_VALUE) {
+				throw new ArithmeticException("long overflow");
+			}
+			return a + 1;
+		}
+
+		public static int decrement(int a) {
+			if (a == Integer.MIN_VALUE) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return a - 1;
+		}
+
+		public static long decrement(long a) {
+			if (a == Long.MIN_VALUE) {
+				throw new ArithmeticException("long overflow");
+			}
+			return a - 1;
+		}
+
+		public static int negate(int a) {
+			if (a == Integer.MIN_VALUE) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return -a;
+		}
+
+		public static long negate(long a) {
+			if (a == Long.MIN_VALUE) {
+				throw new ArithmeticException("long overflow");
+			}
+			return -a;
+		}
+
+		public static int toInt(long value) {
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return (int) value;
+		}
+
+		public static int abs(int a) {
+			if (a == Integer.MIN_VALUE) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return a < 0 ? -a : a;
+		}
+
+		public static long abs(long a) {
+			if (a == Long.MIN_VALUE) {
+				throw new ArithmeticException("long overflow");
+			}
+			return a < 0 ? -a : a;
+		}
+
+		public static int divide(int left, int right) {
+			if (left == Integer.MIN_VALUE && right == -1) {
+				throw new ArithmeticException("integer overflow");
+			}
+			return left / right;
+		}
+
+		public static long divide(long left, long right) {
+			if (left == Long.MIN_VALUE && right == -1) {
+				throw new ArithmeticException("long overflow");
+			}
+			return left / right;
+		}
+
+		public static int multAccum(int oldAcc, int newVal, int scale) {
+			return add(oldAcc, multiply(newVal, scale));
+		}
+
+		public static long multAccum(long oldAcc, long newVal, long scale) {
+			return add(oldAcc, multiply(newVal, scale));
+		}
+	}
+
+	private static boolean readFlag(final String name) {
+		try {
+			return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+				@Override
+				public Boolean run() {
+					return Boolean.getBoolean(name);
+				}
+			});
+		} catch (SecurityException e) {
+			return false;
+		}
+	}
+}
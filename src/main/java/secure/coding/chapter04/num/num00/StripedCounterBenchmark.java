@@ -0,0 +1,79 @@
+package secure.coding.chapter04.num.num00;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @rule: NUM00-J. Detect or prevent integer overflow
+ *
+ * @description: Times 1 to 64 threads that share 2^24 increments of the CAS
+ *               loop of AtomicIntegerExample, of BoundedStripedCounter and of
+ *               an unchecked LongAdder. It then checks that threads racing for
+ *               the last 100000 increments below Integer.MAX_VALUE get
+ *               exactly that many.
+ */
+public class StripedCounterBenchmark {
+
+	private static final int INCREMENTS = 1 << 24;
+	private static final int ROUNDS = 3;
+
+	interface Counter {
+		void increment();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		System.out.format("%-8s %14s %14s %14s%n", "threads", "CAS loop", "striped", "LongAdder");
+		for (int threads = 1; threads <= 64; threads *= 2) {
+			double cas = Double.MAX_VALUE;
+			double striped = Double.MAX_VALUE;
+			double adder = Double.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				final AtomicIntegerExample example = new AtomicIntegerExample();
+				cas = Math.min(cas, run(threads, INCREMENTS, () -> example.nextItem()));
+				final BoundedStripedCounter counter = new BoundedStripedCounter(100);
+				striped = Math.min(striped, run(threads, INCREMENTS, () -> counter.increment()));
+				final LongAdder longAdder = new LongAdder();
+				adder = Math.min(adder, run(threads, INCREMENTS, () -> longAdder.increment()));
+			}
+			System.out.format("%-8d %8.1f Mops %8.1f Mops %8.1f Mops%n", threads, INCREMENTS / cas / 1e6,
+					INCREMENTS / striped / 1e6, INCREMENTS / adder / 1e6);
+		}
+
+		final BoundedStripedCounter counter = new BoundedStripedCounter(Integer.MAX_VALUE - 100000);
+		final LongAdder succeeded = new LongAdder();
+		run(16, 200000, () -> {
+			if (counter.tryIncrement()) {
+				succeeded.increment();
+			}
+		});
+		System.out.println("near the limit: " + succeeded.sum() + " of 200000 increments succeeded, value "
+				+ counter.get() + (counter.get() == Integer.MAX_VALUE ? " (MAX_VALUE)" : ""));
+	}
+
+	// returns the seconds the threads take to share the increments
+	private static double run(int threads, int increments, final Counter counter) throws InterruptedException {
+		final int each = increments / threads;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				for (int i = 0; i < each; i++) {
+					counter.increment();
+				}
+			});
+			workers[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return (System.nanoTime() - begin) / 1e9;
+	}
+}
@@ -0,0 +1,145 @@
+package secure.coding.chapter04.num.num03;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * @rule: NUM03-J. Use integer types that can fully represent the possible
+ *        range of unsigned data
+ *
+ * @description: Reads runs of unsigned 8, 16 and 32 bit fields from a
+ *               ByteBuffer, such as a memory-mapped file of a binary feed,
+ *               into int and long arrays large enough for their whole range,
+ *               as getInteger does for one value with its mask.
+ *
+ *               Each method reads from the position of the buffer and advances
+ *               it, like the bulk get methods of ByteBuffer, and throws a
+ *               BufferUnderflowException without reading anything if fewer
+ *               bytes remain. The byte order is given per call; the order of
+ *               the buffer itself is left as it is. A buffer backed by an
+ *               array is decoded from the array directly. Direct and mapped
+ *               buffers are copied a chunk at a time through a ShortBuffer or
+ *               IntBuffer view, which is a memory copy when the order is the
+ *               native one, and then widened with the mask in a plain loop.
+ */
+public final class UnsignedDecoder {
+
+	static final int CHUNK = 1024;
+
+	private UnsignedDecoder() {
+	}
+
+	public static ByteBuffer getUnsignedBytes(ByteBuffer source, int[] target) {
+		return getUnsignedBytes(source, target, 0, target.length);
+	}
+
+	public static ByteBuffer getUnsignedBytes(ByteBuffer source, int[] target, int offset, int length) {
+		checkBounds(target.length, offset, length);
+		checkRemaining(source, length);
+		byte[] chunk = new byte[Math.min(CHUNK, length)];
+		for (int done = 0; done < length;) {
+			int count = Math.min(chunk.length, length - done);
+			source.get(chunk, 0, count);
+			int base = offset + done;
+			for (int i = 0; i < count; i++) {
+				target[base + i] = chunk[i] & 0xFF;
+			}
+			done += count;
+		}
+		return source;
+	}
+
+	public static ByteBuffer getUnsignedShorts(ByteBuffer source, ByteOrder order, int[] target) {
+		return getUnsignedShorts(source, order, target, 0, target.length);
+	}
+
+	/**
+	 * @description: Reads length 16 bit fields of the given byte order into
+	 *               target from offset, each as a value from 0 to 65535.
+	 */
+	public static ByteBuffer getUnsignedShorts(ByteBuffer source, ByteOrder order, int[] target, int offset,
+			int length) {
+		checkBounds(target.length, offset, length);
+		checkRemaining(source, (long) length * 2);
+		if (source.hasArray()) {
+			byte[] bytes = source.array();
+			int from = source.arrayOffset() + source.position();
+			int high = order == ByteOrder.BIG_ENDIAN ? 0 : 1;
+			for (int i = 0; i < length; i++) {
+				int at = from + 2 * i;
+				target[offset + i] = (bytes[at + high] & 0xFF) << 8 | bytes[at + 1 - high] & 0xFF;
+			}
+			source.position(source.position() + length * 2);
+			return source;
+		}
+		ShortBuffer view = source.duplicate().order(order).asShortBuffer();
+		short[] chunk = new short[Math.min(CHUNK, length)];
+		for (int done = 0; done < length;) {
+			int count = Math.min(chunk.length, length - done);
+			view.get(chunk, 0, count);
+			int base = offset + done;
+			for (int i = 0; i < count; i++) {
+				target[base + i] = chunk[i] & 0xFFFF;
+			}
+			done += count;
+		}
+		source.position(source.position() + length * 2);
+		return source;
+	}
+
+	public static ByteBuffer getUnsignedInts(ByteBuffer source, ByteOrder order, long[] target) {
+		return getUnsignedInts(source, order, target, 0, target.length);
+	}
+
+	/**
+	 * @description: Reads length 32 bit fields of the given byte order into
+	 *               target from offset, each as a value from 0 to 2^32 - 1.
+	 */
+	public static ByteBuffer getUnsignedInts(ByteBuffer source, ByteOrder order, long[] target, int offset,
+			int length) {
+		checkBounds(target.length, offset, length);
+		checkRemaining(source, (long) length * 4);
+		if (source.hasArray()) {
+			byte[] bytes = source.array();
+			int from = source.arrayOffset() + source.position();
+			boolean bigEndian = order == ByteOrder.BIG_ENDIAN;
+			for (int i = 0; i < length; i++) {
+				int at = from + 4 * i;
+				int value = bigEndian
+						? bytes[at] << 24 | (bytes[at + 1] & 0xFF) << 16 | (bytes[at + 2] & 0xFF) << 8 | bytes[at + 3] & 0xFF
+						: bytes[at + 3] << 24 | (bytes[at + 2] & 0xFF) << 16 | (bytes[at + 1] & 0xFF) << 8 | bytes[at] & 0xFF;
+				target[offset + i] = value & 0xFFFFFFFFL;
+			}
+			source.position(source.position() + length * 4);
+			return source;
+		}
+		IntBuffer view = source.duplicate().order(order).asIntBuffer();
+		int[] chunk = new int[Math.min(CHUNK, length)];
+		for (int done = 0; done < length;) {
+			int count = Math.min(chunk.length, length - done);
+			view.get(chunk, 0, count);
+			int base = offset + done;
+			for (int i = 0; i < count; i++) {
+				target[base + i] = chunk[i] & 0xFFFFFFFFL; // mask with 32 one-bits
+			}
+			done += count;
+		}
+		source.position(source.position() + length * 4);
+		return source;
+	}
+
+	private static void checkBounds(int size, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > size - length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + size);
+		}
+	}
+
+	private static void checkRemaining(ByteBuffer source, long bytes) {
+		if (source.remaining() < bytes) {
+			throw new BufferUnderflowException();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package secure.coding.chapter04.num.num03;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * @rule: NUM03-J. Use integer types that can fully represent the possible
+ *        range of unsigned data
+ *
+ * @description: Times getInteger over a DataInputStream against a loop of
+ *               ByteBuffer.getInt with the same mask and against
+ *               UnsignedDecoder, on 4M unsigned 32 bit fields in a heap, a
+ *               direct and a memory-mapped buffer, in both byte orders.
+ */
+public class UnsignedDecoderBenchmark {
+
+	private static final int SIZE = 1 << 22;
+	private static final int ROUNDS = 5;
+
+	static long sink;
+
+	interface Operation {
+		long run() throws IOException;
+	}
+
+	public static void main(String[] args) throws IOException {
+		final byte[] bytes = new byte[SIZE * 4];
+		new Random(42).nextBytes(bytes);
+		final long[] values = new long[SIZE];
+		final ByteBuffer heap = ByteBuffer.wrap(bytes);
+		final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		File file = File.createTempFile("feed", ".bin");
+		file.deleteOnExit();
+		final ByteBuffer mapped;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.write(bytes);
+			mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, bytes.length);
+		}
+
+		System.out.format("%-38s %8s%n", "", "ns/value");
+		report("DataInputStream getInteger", () -> {
+			DataInputStream is = new DataInputStream(new ByteArrayInputStream(bytes));
+			long total = 0;
+			for (int i = 0; i < SIZE; i++) {
+				total += PossibleRange.getInteger(is);
+			}
+			return total;
+		});
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			String suffix = order == ByteOrder.BIG_ENDIAN ? ", big endian" : ", little endian";
+			report("ByteBuffer.getInt" + suffix, () -> {
+				heap.clear();
+				heap.order(order);
+				for (int i = 0; i < SIZE; i++) {
+					values[i] = heap.getInt() & 0xFFFFFFFFL;
+				}
+				return values[SIZE - 1];
+			});
+			report("heap getUnsignedInts" + suffix, () -> {
+				heap.clear();
+				UnsignedDecoder.getUnsignedInts(heap, order, values);
+				return values[SIZE - 1];
+			});
+			report("direct getUnsignedInts" + suffix, () -> {
+				direct.clear();
+				UnsignedDecoder.getUnsignedInts(direct, order, values);
+				return values[SIZE - 1];
+			});
+			report("mapped getUnsignedInts" + suffix, () -> {
+				mapped.clear();
+				UnsignedDecoder.getUnsignedInts(mapped, order, values);
+				return values[SIZE - 1];
+			});
+		}
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static void report(String name, Operation operation) throws IOException {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.format("%-38s %8.2f%n", name, (double) best / SIZE);
+	}
+}
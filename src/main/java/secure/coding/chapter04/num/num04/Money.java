@@ -0,0 +1,358 @@
+package secure.coding.chapter04.num.num04;
+
+import java.math.RoundingMode;
+
+/**
+ * @rule: NUM04-J. Do not use floating-point numbers if precise computation is
+ *        required
+ *
+ * @description: Money arithmetic on long minor units, the cents of the
+ *               compliant calculatePrice, without the allocation of
+ *               BigDecimal. A Money instance is a currency scale: CENTS for
+ *               two decimal places, WHOLE for currencies without minor units,
+ *               or any scale up to 18. The amounts themselves are plain long
+ *               values, so a ledger can keep them in long[] columns.
+ *
+ *               Every operation throws an ArithmeticException on overflow
+ *               instead of wrapping, and every operation that can lose a
+ *               digit takes an explicit RoundingMode. RoundingMode.UNNECESSARY
+ *               throws an ArithmeticException when rounding would be needed.
+ */
+public final class Money {
+
+	static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	public static final Money WHOLE = new Money(0);
+	public static final Money CENTS = new Money(2);
+	public static final Money MILLS = new Money(3);
+
+	private final int scale;
+	private final long unit;
+
+	private Money(int scale) {
+		this.scale = scale;
+		this.unit = POWERS_OF_TEN[scale];
+	}
+
+	public static Money ofScale(int scale) {
+		if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("Scale must be between 0 and 18: " + scale);
+		}
+		switch (scale) {
+		case 0:
+			return WHOLE;
+		case 2:
+			return CENTS;
+		case 3:
+			return MILLS;
+		default:
+			return new Money(scale);
+		}
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	// the amount of major units, such as dollars, in minor units
+	public long of(long major) {
+		return Math.multiplyExact(major, unit);
+	}
+
+	public long of(long major, long minor) {
+		if (minor < 0 || minor >= unit) {
+			throw new IllegalArgumentException("Minor units out of range: " + minor);
+		}
+		return major < 0 ? Math.subtractExact(of(major), minor) : Math.addExact(of(major), minor);
+	}
+
+	public long add(long amount, long other) {
+		return Math.addExact(amount, other);
+	}
+
+	public long subtract(long amount, long other) {
+		return Math.subtractExact(amount, other);
+	}
+
+	public long negate(long amount) {
+		return Math.negateExact(amount);
+	}
+
+	public long multiply(long amount, long quantity) {
+		return Math.multiplyExact(amount, quantity);
+	}
+
+	/**
+	 * @description: amount * numerator / denominator, rounded. The product
+	 *               must fit in a long.
+	 */
+	public long multiply(long amount, long numerator, long denominator, RoundingMode mode) {
+		return divide(Math.multiplyExact(amount, numerator), denominator, mode);
+	}
+
+	/**
+	 * @description: amount * rate, where rate is a decimal with rateScale
+	 *               digits after the point: 8.25% is multiply(amount, 825, 4,
+	 *               mode).
+	 */
+	public long multiplyByRate(long amount, long rate, int rateScale, RoundingMode mode) {
+		return multiply(amount, rate, powerOfTen(rateScale), mode);
+	}
+
+	public long divide(long amount, long divisor, RoundingMode mode) {
+		if (divisor == 0) {
+			throw new ArithmeticException("Division by zero");
+		}
+		if (amount == Long.MIN_VALUE && divisor == -1) {
+			throw new ArithmeticException("long overflow");
+		}
+		long quotient = amount / divisor;
+		long remainder = amount % divisor;
+		return remainder == 0 ? quotient : round(quotient, remainder, divisor, mode);
+	}
+
+	/**
+	 * @description: Splits amount into parts that differ by at most one minor
+	 *               unit and add up to amount exactly; the parts with the
+	 *               extra unit come first.
+	 */
+	public long[] allocate(long amount, int parts) {
+		if (parts <= 0) {
+			throw new IllegalArgumentException("Parts must be positive: " + parts);
+		}
+		long share = amount / parts;
+		long left = amount % parts;
+		long[] result = new long[parts];
+		for (int i = 0; i < parts; i++) {
+			result[i] = share + (i < Math.abs(left) ? Long.signum(left) : 0);
+		}
+		return result;
+	}
+
+	// the amount in this scale of an amount in another scale
+	public long convert(long amount, Money from, RoundingMode mode) {
+		if (from.scale <= scale) {
+			return Math.multiplyExact(amount, POWERS_OF_TEN[scale - from.scale]);
+		}
+		return divide(amount, POWERS_OF_TEN[from.scale - scale], mode);
+	}
+
+	public long sum(long[] amounts) {
+		return sum(amounts, 0, amounts.length);
+	}
+
+	public long sum(long[] amounts, int from, int to) {
+		long total = 0;
+		for (int i = from; i < to; i++) {
+			total = Math.addExact(total, amounts[i]);
+		}
+		return total;
+	}
+
+	// result[i] = amounts[i] + others[i]; result may be one of the inputs
+	public void add(long[] amounts, long[] others, long[] result) {
+		checkLengths(amounts.length, others.length, result.length);
+		for (int i = 0; i < amounts.length; i++) {
+			result[i] = Math.addExact(amounts[i], others[i]);
+		}
+	}
+
+	// result[i] = amounts[i] * rate, rounded; result may be amounts
+	public void multiplyByRate(long[] amounts, long rate, int rateScale, RoundingMode mode, long[] result) {
+		checkLengths(amounts.length, amounts.length, result.length);
+		long divisor = powerOfTen(rateScale);
+		for (int i = 0; i < amounts.length; i++) {
+			long product = Math.multiplyExact(amounts[i], rate);
+			long quotient = product / divisor;
+			long remainder = product % divisor;
+			result[i] = remainder == 0 ? quotient : round(quotient, remainder, divisor, mode);
+		}
+	}
+
+	/**
+	 * @description: Parses an amount such as -12.5 or 1234.56 with at most
+	 *               scale digits after the point.
+	 */
+	public long parse(CharSequence text) {
+		return parse(text, RoundingMode.UNNECESSARY);
+	}
+
+	/**
+	 * @description: Parses an amount, rounding the digits past the scale. The
+	 *               accepted form is an optional sign, digits and an optional
+	 *               point followed by digits; there are no exponents, grouping
+	 *               separators or currency symbols.
+	 */
+	public long parse(CharSequence text, RoundingMode mode) {
+		int length = text.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+			negative = text.charAt(0) == '-';
+			i++;
+		}
+		// accumulated as a negative number, which has room for Long.MIN_VALUE
+		long value = 0;
+		int digits = 0;
+		int fraction = -1;
+		long dropped = 0;
+		boolean droppedFirst = false;
+		boolean droppedNonZero = false;
+		for (; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '.' && fraction < 0) {
+				fraction = 0;
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Not an amount: " + text);
+			}
+			digits++;
+			int digit = c - '0';
+			if (fraction >= scale) {
+				// keep the first dropped digit and whether any other is nonzero
+				if (!droppedFirst) {
+					dropped = digit;
+					droppedFirst = true;
+				} else {
+					droppedNonZero |= digit != 0;
+				}
+				continue;
+			}
+			if (fraction >= 0) {
+				fraction++;
+			}
+			if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + digit) {
+				throw new ArithmeticException("Amount out of range: " + text);
+			}
+			value = value * 10 - digit;
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("Not an amount: " + text);
+		}
+		int missing = scale - Math.max(fraction, 0);
+		if (missing > 0) {
+			if (value < Long.MIN_VALUE / POWERS_OF_TEN[missing]) {
+				throw new ArithmeticException("Amount out of range: " + text);
+			}
+			value *= POWERS_OF_TEN[missing];
+		}
+		if (!negative) {
+			if (value == Long.MIN_VALUE) {
+				throw new ArithmeticException("Amount out of range: " + text);
+			}
+			value = -value;
+		}
+		// the dropped digits in twentieths: twice the first one, plus one if any later one is nonzero
+		long remainder = dropped * 2 + (droppedNonZero ? 1 : 0);
+		if (remainder != 0) {
+			value = round(value, negative ? -remainder : remainder, 20, mode);
+		}
+		return value;
+	}
+
+	public String format(long amount) {
+		return appendTo(new StringBuilder(24), amount).toString();
+	}
+
+	/**
+	 * @description: Appends the amount with exactly scale digits after the
+	 *               point, such as -0.05, without creating a String.
+	 */
+	public StringBuilder appendTo(StringBuilder sb, long amount) {
+		if (amount < 0) {
+			sb.append('-');
+		}
+		// negative division keeps Long.MIN_VALUE in range
+		long negative = amount < 0 ? amount : -amount;
+		sb.append(-(negative / unit));
+		if (scale > 0) {
+			sb.append('.');
+			long minor = -(negative % unit);
+			for (long p = unit / 10; p > minor && p > 1; p /= 10) {
+				sb.append('0');
+			}
+			sb.append(minor);
+		}
+		return sb;
+	}
+
+	/**
+	 * @description: Rounds quotient, the truncated result of a division that
+	 *               left a nonzero remainder, to the neighbour chosen by mode.
+	 *               The remainder has the sign of the dividend, as with %.
+	 */
+	static long round(long quotient, long remainder, long divisor, RoundingMode mode) {
+		// the direction away from zero of the exact result
+		int sign = (remainder < 0) == (divisor < 0) ? 1 : -1;
+		boolean away;
+		switch (mode) {
+		case UP:
+			away = true;
+			break;
+		case DOWN:
+			away = false;
+			break;
+		case CEILING:
+			away = sign > 0;
+			break;
+		case FLOOR:
+			away = sign < 0;
+			break;
+		case HALF_UP:
+		case HALF_DOWN:
+		case HALF_EVEN:
+			int half = compareHalf(remainder, divisor);
+			if (half != 0) {
+				away = half > 0;
+			} else if (mode == RoundingMode.HALF_UP) {
+				away = true;
+			} else if (mode == RoundingMode.HALF_DOWN) {
+				away = false;
+			} else {
+				away = (quotient & 1) != 0;
+			}
+			break;
+		default:
+			throw new ArithmeticException("Rounding necessary");
+		}
+		return away ? Math.addExact(quotient, sign) : quotient;
+	}
+
+	// compares |remainder| with |divisor| / 2 without overflow
+	private static int compareHalf(long remainder, long divisor) {
+		long r = Math.abs(remainder);
+		long d = divisor == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(divisor);
+		long rest = d - r;
+		if (divisor == Long.MIN_VALUE) {
+			// |divisor| is one more than d
+			rest++;
+		}
+		return Long.compare(r, rest);
+	}
+
+	private static long powerOfTen(int scale) {
+		if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("Scale must be between 0 and 18: " + scale);
+		}
+		return POWERS_OF_TEN[scale];
+	}
+
+	private static void checkLengths(int a, int b, int result) {
+		if (a != b || a != result) {
+			throw new IllegalArgumentException("Columns differ in length: " + a + ", " + b + ", " + result);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Money[scale=" + scale + "]";
+	}
+}
@@ -0,0 +1,141 @@
+package secure.coding.chapter04.num.num04;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+/**
+ * @rule: NUM04-J. Do not use floating-point numbers if precise computation is
+ *        required
+ *
+ * @description: Times a ledger of 1M amounts in cents kept as Money long
+ *               columns, as BigDecimal and as double: summing, applying an
+ *               8.25% tax rounded half-even, parsing and formatting. It also
+ *               prints how far the double totals are from the exact ones.
+ */
+public class MoneyBenchmark {
+
+	private static final int SIZE = 1 << 20;
+	private static final int ROUNDS = 5;
+
+	static long sink;
+
+	interface Operation {
+		long run();
+	}
+
+	public static void main(String[] args) {
+		final Money money = Money.CENTS;
+		Random random = new Random(42);
+		final long[] cents = new long[SIZE];
+		final BigDecimal[] decimals = new BigDecimal[SIZE];
+		final double[] doubles = new double[SIZE];
+		final String[] texts = new String[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			cents[i] = random.nextInt(10000000) - 1000000;
+			texts[i] = money.format(cents[i]);
+			decimals[i] = new BigDecimal(texts[i]);
+			doubles[i] = Double.parseDouble(texts[i]);
+		}
+		final long[] taxes = new long[SIZE];
+		final BigDecimal rate = new BigDecimal("0.0825");
+		final StringBuilder sb = new StringBuilder(32);
+
+		System.out.format("%-10s %12s %12s %12s%n", "ns/amount", "Money", "BigDecimal", "double");
+		print("sum", () -> money.sum(cents), () -> {
+			BigDecimal total = BigDecimal.ZERO;
+			for (BigDecimal decimal : decimals) {
+				total = total.add(decimal);
+			}
+			return total.unscaledValue().longValue();
+		}, () -> {
+			double total = 0;
+			for (double d : doubles) {
+				total += d;
+			}
+			return (long) total;
+		});
+		print("tax", () -> {
+			money.multiplyByRate(cents, 825, 4, RoundingMode.HALF_EVEN, taxes);
+			return taxes[SIZE - 1];
+		}, () -> {
+			long total = 0;
+			for (BigDecimal decimal : decimals) {
+				total += decimal.multiply(rate).setScale(2, RoundingMode.HALF_EVEN).scale();
+			}
+			return total;
+		}, () -> {
+			long total = 0;
+			for (double d : doubles) {
+				total += Math.round(d * 0.0825 * 100);
+			}
+			return total;
+		});
+		print("parse", () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += money.parse(text);
+			}
+			return total;
+		}, () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += new BigDecimal(text).scale();
+			}
+			return total;
+		}, () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += (long) Double.parseDouble(text);
+			}
+			return total;
+		});
+		print("format", () -> {
+			long total = 0;
+			for (long amount : cents) {
+				sb.setLength(0);
+				total += money.appendTo(sb, amount).length();
+			}
+			return total;
+		}, () -> {
+			long total = 0;
+			for (BigDecimal decimal : decimals) {
+				total += decimal.toPlainString().length();
+			}
+			return total;
+		}, () -> {
+			long total = 0;
+			for (double d : doubles) {
+				sb.setLength(0);
+				total += sb.append(d).length();
+			}
+			return total;
+		});
+
+		BigDecimal exact = BigDecimal.ZERO;
+		double approximate = 0;
+		for (int i = 0; i < SIZE; i++) {
+			exact = exact.add(decimals[i]);
+			approximate += doubles[i];
+		}
+		System.out.println();
+		System.out.println("Money total  " + money.format(money.sum(cents)));
+		System.out.println("exact total  " + exact.toPlainString());
+		System.out.println("double total " + new BigDecimal(approximate).toPlainString());
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static void print(String name, Operation money, Operation decimal, Operation floating) {
+		System.out.format("%-10s %12.2f %12.2f %12.2f%n", name, time(money), time(decimal), time(floating));
+	}
+
+	private static double time(Operation operation) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / SIZE;
+	}
+}
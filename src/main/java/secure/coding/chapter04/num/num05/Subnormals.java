@@ -0,0 +1,142 @@
+package secure.coding.chapter04.num.num05;
+
+/**
+ * @rule: NUM05-J. Do not use denormalized numbers
+ *
+ * @description: Finds and removes denormalized (subnormal) values in whole
+ *               float and double arrays, where isDenormalized looks at one
+ *               value. Arithmetic on subnormal operands or results is much
+ *               slower than on normal ones on many processors, and the JVM
+ *               offers no flush-to-zero mode, so data that may hold them, such
+ *               as the output of a decaying filter, has to be checked or
+ *               cleaned before it goes into a numeric kernel.
+ *
+ *               The test is on the bits: a value is subnormal when its
+ *               exponent bits are all zero and its magnitude is not zero. It
+ *               is computed with subtractions and shifts only, so the counting
+ *               loops have no branch and the JIT can unroll them. The other
+ *               methods count a block at a time and look at single values only
+ *               in blocks that have a subnormal.
+ */
+public final class Subnormals {
+
+	static final int BLOCK = 256;
+
+	private static final int FLOAT_MIN_NORMAL_BITS = Float.floatToRawIntBits(Float.MIN_NORMAL);
+	private static final long DOUBLE_MIN_NORMAL_BITS = Double.doubleToRawLongBits(Double.MIN_NORMAL);
+
+	private Subnormals() {
+	}
+
+	public static int count(float[] values) {
+		return count(values, 0, values.length);
+	}
+
+	public static int count(double[] values) {
+		return count(values, 0, values.length);
+	}
+
+	/**
+	 * @description: The index of the first subnormal value from fromIndex on,
+	 *               or -1 if there is none.
+	 */
+	public static int indexOf(float[] values, int fromIndex) {
+		for (int from = Math.max(fromIndex, 0); from < values.length; from += BLOCK) {
+			int to = Math.min(from + BLOCK, values.length);
+			if (count(values, from, to) > 0) {
+				for (int i = from; i < to; i++) {
+					if (isSubnormal(Float.floatToRawIntBits(values[i]))) {
+						return i;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	public static int indexOf(double[] values, int fromIndex) {
+		for (int from = Math.max(fromIndex, 0); from < values.length; from += BLOCK) {
+			int to = Math.min(from + BLOCK, values.length);
+			if (count(values, from, to) > 0) {
+				for (int i = from; i < to; i++) {
+					if (isSubnormal(Double.doubleToRawLongBits(values[i]))) {
+						return i;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @description: Replaces every subnormal value with a zero of the same
+	 *               sign, as a processor in flush-to-zero mode would produce,
+	 *               and returns how many were replaced. Blocks without one are
+	 *               only read.
+	 */
+	public static int flushToZero(float[] values) {
+		int flushed = 0;
+		for (int from = 0; from < values.length; from += BLOCK) {
+			int to = Math.min(from + BLOCK, values.length);
+			if (count(values, from, to) == 0) {
+				continue;
+			}
+			for (int i = from; i < to; i++) {
+				int bits = Float.floatToRawIntBits(values[i]);
+				if (isSubnormal(bits)) {
+					values[i] = Float.intBitsToFloat(bits & Integer.MIN_VALUE);
+					flushed++;
+				}
+			}
+		}
+		return flushed;
+	}
+
+	public static int flushToZero(double[] values) {
+		int flushed = 0;
+		for (int from = 0; from < values.length; from += BLOCK) {
+			int to = Math.min(from + BLOCK, values.length);
+			if (count(values, from, to) == 0) {
+				continue;
+			}
+			for (int i = from; i < to; i++) {
+				long bits = Double.doubleToRawLongBits(values[i]);
+				if (isSubnormal(bits)) {
+					values[i] = Double.longBitsToDouble(bits & Long.MIN_VALUE);
+					flushed++;
+				}
+			}
+		}
+		return flushed;
+	}
+
+	// the same test as FloatingPointFormats.isDenormalized, on the bits
+	static boolean isSubnormal(int bits) {
+		int magnitude = bits & Integer.MAX_VALUE;
+		return magnitude != 0 && magnitude < FLOAT_MIN_NORMAL_BITS;
+	}
+
+	static boolean isSubnormal(long bits) {
+		long magnitude = bits & Long.MAX_VALUE;
+		return magnitude != 0 && magnitude < DOUBLE_MIN_NORMAL_BITS;
+	}
+
+	private static int count(float[] values, int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			int magnitude = Float.floatToRawIntBits(values[i]) & Integer.MAX_VALUE;
+			// one for a magnitude below the smallest normal, less one for zero
+			count += ((magnitude - FLOAT_MIN_NORMAL_BITS) >>> 31) - ((magnitude - 1) >>> 31);
+		}
+		return count;
+	}
+
+	private static int count(double[] values, int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			long magnitude = Double.doubleToRawLongBits(values[i]) & Long.MAX_VALUE;
+			count += (int) ((magnitude - DOUBLE_MIN_NORMAL_BITS) >>> 63) - (int) ((magnitude - 1) >>> 63);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,84 @@
+package secure.coding.chapter04.num.num05;
+
+import java.util.Random;
+
+/**
+ * @rule: NUM05-J. Do not use denormalized numbers
+ *
+ * @description: Times a dot product of two arrays of 1M values with normal
+ *               inputs, with inputs scaled so that most of them and their
+ *               products are subnormal, and with the same inputs after
+ *               Subnormals.flushToZero, for float and double, then the cost of
+ *               scanning and flushing an array.
+ */
+public class SubnormalsBenchmark {
+
+	private static final int SIZE = 1 << 20;
+	private static final int ROUNDS = 5;
+
+	static double sink;
+
+	interface Operation {
+		double run();
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		final float[] floats = new float[SIZE];
+		final float[] smallFloats = new float[SIZE];
+		final double[] doubles = new double[SIZE];
+		final double[] smallDoubles = new double[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			floats[i] = random.nextFloat();
+			smallFloats[i] = floats[i] * 1e-39f;
+			doubles[i] = random.nextDouble();
+			smallDoubles[i] = doubles[i] * 1e-309;
+		}
+		final float[] flushedFloats = smallFloats.clone();
+		final double[] flushedDoubles = smallDoubles.clone();
+		System.out.println("subnormal floats: " + Subnormals.count(smallFloats) + ", flushed: "
+				+ Subnormals.flushToZero(flushedFloats));
+		System.out.println("subnormal doubles: " + Subnormals.count(smallDoubles) + ", flushed: "
+				+ Subnormals.flushToZero(flushedDoubles));
+
+		System.out.format("%-34s %8s%n", "", "ns/value");
+		report("float dot, normal", () -> dot(floats, floats));
+		report("float dot, subnormal", () -> dot(smallFloats, floats));
+		report("float dot, flushed", () -> dot(flushedFloats, floats));
+		report("double dot, normal", () -> dot(doubles, doubles));
+		report("double dot, subnormal", () -> dot(smallDoubles, doubles));
+		report("double dot, flushed", () -> dot(flushedDoubles, doubles));
+		report("float count", () -> Subnormals.count(smallFloats));
+		report("double count", () -> Subnormals.count(smallDoubles));
+		report("double indexOf, none", () -> Subnormals.indexOf(doubles, 0));
+		report("double flushToZero, none left", () -> Subnormals.flushToZero(flushedDoubles));
+		report("double flushToZero, all", () -> Subnormals.flushToZero(smallDoubles.clone()));
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static double dot(float[] a, float[] b) {
+		float sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private static void report(String name, Operation operation) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.format("%-34s %8.2f%n", name, (double) best / SIZE);
+	}
+}
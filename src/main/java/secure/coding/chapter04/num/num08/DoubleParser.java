@@ -0,0 +1,345 @@
+package secure.coding.chapter04.num.num08;
+
+import java.math.BigInteger;
+
+/**
+ * @rule: NUM08-J. Check floating-point inputs for exceptional values
+ *
+ * @description: Parses decimal text into a double, correctly rounded like
+ *               Double.parseDouble, and checks it in the same pass. NaN,
+ *               Infinity, hexadecimal floats and values out of the range of
+ *               double are rejected with a status code rather than returned or
+ *               thrown, so the checks of the compliant doDeposit cannot be
+ *               forgotten and invalid input costs no exception.
+ *
+ *               The accepted syntax is strict: an optional sign, ASCII digits
+ *               with an optional decimal point, and an optional exponent. Unlike
+ *               Double.parseDouble, surrounding whitespace and the d and f
+ *               suffixes are syntax errors.
+ *
+ *               The conversion is the algorithm of Eisel and Lemire: the
+ *               decimal significand is multiplied by a 128 bit approximation of
+ *               the power of ten, which always gives the correctly rounded
+ *               result for up to 19 significant digits. Longer inputs are
+ *               truncated to 19 digits; if the truncated value and the next one
+ *               up round differently, the input goes to Double.parseDouble.
+ */
+public final class DoubleParser {
+
+	public static final int OK = 0;
+	public static final int SYNTAX_ERROR = 1;
+	// NaN or Infinity
+	public static final int NOT_FINITE = 2;
+	public static final int HEXADECIMAL = 3;
+	// too large for a double
+	public static final int OVERFLOW = 4;
+	// not zero, but too small for a double
+	public static final int UNDERFLOW = 5;
+
+	private static final int MIN_POWER = -342;
+	private static final int MAX_POWER = 308;
+	private static final int MAX_DIGITS = 19;
+
+	// the 128 bits of 5^q, normalized so the highest bit is set
+	private static final long[] POWER_HIGH = new long[MAX_POWER - MIN_POWER + 1];
+	private static final long[] POWER_LOW = new long[MAX_POWER - MIN_POWER + 1];
+
+	private static final double[] EXACT_POWERS = new double[23];
+
+	static {
+		BigInteger two127 = BigInteger.ONE.shiftLeft(127);
+		BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+		for (int q = MIN_POWER; q <= MAX_POWER; q++) {
+			BigInteger power;
+			if (q < 0) {
+				// the reciprocal, rounded up
+				BigInteger five = BigInteger.valueOf(5).pow(-q);
+				int z = five.bitLength();
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				power = BigInteger.ONE.shiftLeft(b).divide(five).add(BigInteger.ONE);
+				while (power.compareTo(two128) >= 0) {
+					power = power.shiftRight(1);
+				}
+			} else {
+				power = BigInteger.valueOf(5).pow(q);
+				while (power.compareTo(two127) < 0) {
+					power = power.shiftLeft(1);
+				}
+				while (power.compareTo(two128) >= 0) {
+					power = power.shiftRight(1);
+				}
+			}
+			POWER_HIGH[q - MIN_POWER] = power.shiftRight(64).longValue();
+			POWER_LOW[q - MIN_POWER] = power.longValue();
+		}
+		EXACT_POWERS[0] = 1;
+		for (int i = 1; i < EXACT_POWERS.length; i++) {
+			EXACT_POWERS[i] = EXACT_POWERS[i - 1] * 10;
+		}
+	}
+
+	private DoubleParser() {
+	}
+
+	/**
+	 * @description: The outcome of a parse. The value is only meaningful when
+	 *               the status is OK; otherwise it is NaN.
+	 */
+	public static final class Result {
+		private double value = Double.NaN;
+		private int status = SYNTAX_ERROR;
+
+		public double getValue() {
+			return value;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public boolean isOk() {
+			return status == OK;
+		}
+
+		int set(int status, double value) {
+			this.status = status;
+			this.value = status == OK ? value : Double.NaN;
+			return status;
+		}
+	}
+
+	/**
+	 * @description: Parses text into result and returns the status, which is
+	 *               also kept in result.
+	 */
+	public static int parse(CharSequence text, Result result) {
+		return parse(text, null, 0, text.length(), result);
+	}
+
+	// parses length ASCII bytes of bytes from offset
+	public static int parse(byte[] bytes, int offset, int length, Result result) {
+		if (offset < 0 || length < 0 || offset > bytes.length - length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + bytes.length);
+		}
+		return parse(null, bytes, offset, length, result);
+	}
+
+	public static String statusName(int status) {
+		switch (status) {
+		case OK:
+			return "OK";
+		case SYNTAX_ERROR:
+			return "SYNTAX_ERROR";
+		case NOT_FINITE:
+			return "NOT_FINITE";
+		case HEXADECIMAL:
+			return "HEXADECIMAL";
+		case OVERFLOW:
+			return "OVERFLOW";
+		case UNDERFLOW:
+			return "UNDERFLOW";
+		default:
+			return "UNKNOWN(" + status + ")";
+		}
+	}
+
+	// reads from text, or from bytes when text is null
+	private static int parse(CharSequence text, byte[] bytes, int offset, int length, Result result) {
+		int end = offset + length;
+		int i = offset;
+		boolean negative = false;
+		if (i < end) {
+			char c = charAt(text, bytes, i);
+			if (c == '-' || c == '+') {
+				negative = c == '-';
+				i++;
+			}
+		}
+		if (i < end) {
+			char c = charAt(text, bytes, i);
+			if (c == 'N' || c == 'I') {
+				return result.set(matches(text, bytes, i, end, c == 'N' ? "NaN" : "Infinity") ? NOT_FINITE
+						: SYNTAX_ERROR, 0);
+			}
+			if (c == '0' && i + 1 < end && (charAt(text, bytes, i + 1) | 0x20) == 'x') {
+				return result.set(HEXADECIMAL, 0);
+			}
+		}
+		// up to 19 significant digits, read as an unsigned long
+		long significand = 0;
+		int digits = 0;
+		int significant = 0;
+		// the decimal exponent of the last digit kept in significand
+		long exponent = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			char c = charAt(text, bytes, i);
+			if (c >= '0' && c <= '9') {
+				digits++;
+				if (significant > 0 || c != '0') {
+					if (significant < MAX_DIGITS) {
+						significand = significand * 10 + (c - '0');
+						if (point) {
+							exponent--;
+						}
+					} else if (!point) {
+						exponent++;
+					}
+					significant++;
+				} else if (point) {
+					exponent--;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return result.set(SYNTAX_ERROR, 0);
+		}
+		if (i < end) {
+			char c = charAt(text, bytes, i);
+			if (c != 'e' && c != 'E') {
+				return result.set(SYNTAX_ERROR, 0);
+			}
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (charAt(text, bytes, i) == '-' || charAt(text, bytes, i) == '+')) {
+				negativeExponent = charAt(text, bytes, i) == '-';
+				i++;
+			}
+			if (i == end) {
+				return result.set(SYNTAX_ERROR, 0);
+			}
+			long explicit = 0;
+			for (; i < end; i++) {
+				c = charAt(text, bytes, i);
+				if (c < '0' || c > '9') {
+					return result.set(SYNTAX_ERROR, 0);
+				}
+				// far enough past the range of double to keep the sum from overflowing
+				if (explicit < 100000000) {
+					explicit = explicit * 10 + (c - '0');
+				}
+			}
+			exponent += negativeExponent ? -explicit : explicit;
+		}
+		if (significand == 0) {
+			return result.set(OK, negative ? -0.0 : 0.0);
+		}
+		double value;
+		if (exponent < MIN_POWER) {
+			value = 0;
+		} else if (exponent > MAX_POWER) {
+			value = Double.POSITIVE_INFINITY;
+		} else if (significant <= MAX_DIGITS && exponent >= -22 && exponent <= 22 && significand >= 0
+				&& significand <= 1L << 53) {
+			// both operands are exact, so the one rounding of the operation is the right one
+			value = exponent < 0 ? significand / EXACT_POWERS[(int) -exponent]
+					: significand * EXACT_POWERS[(int) exponent];
+		} else {
+			long bits = toBits(significand, (int) exponent);
+			if (significant > MAX_DIGITS && bits != toBits(significand + 1, (int) exponent)) {
+				value = Double.parseDouble(new String(chars(text, bytes, offset, length)));
+			} else {
+				value = Double.longBitsToDouble(bits);
+			}
+			value = Math.abs(value);
+		}
+		if (value == Double.POSITIVE_INFINITY) {
+			return result.set(OVERFLOW, 0);
+		}
+		if (value == 0) {
+			return result.set(UNDERFLOW, 0);
+		}
+		return result.set(OK, negative ? -value : value);
+	}
+
+	/**
+	 * @description: The bits of the double nearest to w * 10^q, for a nonzero
+	 *               w and q between MIN_POWER and MAX_POWER.
+	 */
+	static long toBits(long w, int q) {
+		int leadingZeros = Long.numberOfLeadingZeros(w);
+		w <<= leadingZeros;
+		int index = q - MIN_POWER;
+		long high = unsignedMultiplyHigh(w, POWER_HIGH[index]);
+		long low = w * POWER_HIGH[index];
+		// 55 bits are needed; refine with the lower half of the power when they are uncertain
+		if ((high & 0x1FF) == 0x1FF) {
+			long secondHigh = unsignedMultiplyHigh(w, POWER_LOW[index]);
+			low += secondHigh;
+			if (Long.compareUnsigned(secondHigh, low) > 0) {
+				high++;
+			}
+		}
+		int upperBit = (int) (high >>> 63);
+		long mantissa = high >>> (upperBit + 9);
+		int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - leadingZeros + 1023;
+		if (power2 <= 0) {
+			// subnormal
+			if (-power2 + 1 >= 64) {
+				return 0;
+			}
+			mantissa >>>= -power2 + 1;
+			mantissa += mantissa & 1;
+			mantissa >>>= 1;
+			power2 = mantissa < 1L << 52 ? 0 : 1;
+			return (long) power2 << 52 | mantissa & ((1L << 52) - 1);
+		}
+		// exactly halfway between two doubles: round to even instead of up
+		if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && q <= 23 && (mantissa & 3) == 1
+				&& mantissa << (upperBit + 9) == high) {
+			mantissa &= ~1L;
+		}
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if (mantissa >= 2L << 52) {
+			mantissa = 1L << 52;
+			power2++;
+		}
+		mantissa &= ~(1L << 52);
+		if (power2 >= 0x7FF) {
+			return 0x7FFL << 52;
+		}
+		return (long) power2 << 52 | mantissa;
+	}
+
+	// the high 64 bits of the unsigned 128 bit product
+	static long unsignedMultiplyHigh(long a, long b) {
+		long aHigh = a >>> 32;
+		long aLow = a & 0xFFFFFFFFL;
+		long bHigh = b >>> 32;
+		long bLow = b & 0xFFFFFFFFL;
+		long lowLow = aLow * bLow;
+		long highLow = aHigh * bLow;
+		long lowHigh = aLow * bHigh;
+		long cross = (lowLow >>> 32) + (highLow & 0xFFFFFFFFL) + lowHigh;
+		return aHigh * bHigh + (highLow >>> 32) + (cross >>> 32);
+	}
+
+	private static boolean matches(CharSequence text, byte[] bytes, int from, int end, String word) {
+		if (end - from != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if (charAt(text, bytes, from + i) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static char charAt(CharSequence text, byte[] bytes, int i) {
+		return text != null ? text.charAt(i) : (char) (bytes[i] & 0xFF);
+	}
+
+	private static char[] chars(CharSequence text, byte[] bytes, int offset, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = charAt(text, bytes, offset + i);
+		}
+		return chars;
+	}
+}
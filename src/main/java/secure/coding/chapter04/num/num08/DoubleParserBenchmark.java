@@ -0,0 +1,101 @@
+package secure.coding.chapter04.num.num08;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * @rule: NUM08-J. Check floating-point inputs for exceptional values
+ *
+ * @description: Times the checked parse of doDeposit, Double.parseDouble
+ *               followed by isInfinite and isNaN, against DoubleParser on 1M
+ *               random doubles in full precision, on 1M amounts with two
+ *               decimals, and on amounts of which one in ten is invalid.
+ */
+public class DoubleParserBenchmark {
+
+	private static final int SIZE = 1 << 20;
+	private static final int ROUNDS = 5;
+
+	static long sink;
+
+	interface Operation {
+		long run();
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		String[] full = new String[SIZE];
+		String[] amounts = new String[SIZE];
+		String[] mixed = new String[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			full[i] = Double.toString(Double.longBitsToDouble(random.nextLong() & 0x7FEFFFFFFFFFFFFFL));
+			amounts[i] = random.nextInt(1000000) + "." + (10 + random.nextInt(90));
+			mixed[i] = i % 10 == 0 ? (i % 20 == 0 ? "NaN" : "12,50") : amounts[i];
+		}
+		System.out.format("%-22s %14s %14s %14s%n", "ns/value", "parseDouble", "DoubleParser", "from bytes");
+		compare("full precision", full);
+		compare("amounts", amounts);
+		compare("10% invalid", mixed);
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static void compare(String name, final String[] texts) {
+		StringBuilder joined = new StringBuilder();
+		final int[] starts = new int[texts.length + 1];
+		for (int i = 0; i < texts.length; i++) {
+			starts[i] = joined.length();
+			joined.append(texts[i]);
+		}
+		starts[texts.length] = joined.length();
+		final byte[] bytes = joined.toString().getBytes(StandardCharsets.US_ASCII);
+		final DoubleParser.Result result = new DoubleParser.Result();
+
+		double jdk = time(() -> {
+			long total = 0;
+			for (String text : texts) {
+				try {
+					double value = Double.parseDouble(text);
+					if (!Double.isInfinite(value) && !Double.isNaN(value)) {
+						total ^= Double.doubleToRawLongBits(value);
+					}
+				} catch (NumberFormatException e) {
+					total++;
+				}
+			}
+			return total;
+		});
+		double parser = time(() -> {
+			long total = 0;
+			for (String text : texts) {
+				if (DoubleParser.parse(text, result) == DoubleParser.OK) {
+					total ^= Double.doubleToRawLongBits(result.getValue());
+				} else {
+					total++;
+				}
+			}
+			return total;
+		});
+		double fromBytes = time(() -> {
+			long total = 0;
+			for (int i = 0; i < starts.length - 1; i++) {
+				if (DoubleParser.parse(bytes, starts[i], starts[i + 1] - starts[i], result) == DoubleParser.OK) {
+					total ^= Double.doubleToRawLongBits(result.getValue());
+				} else {
+					total++;
+				}
+			}
+			return total;
+		});
+		System.out.format("%-22s %14.1f %14.1f %14.1f%n", name, jdk, parser, fromBytes);
+	}
+
+	private static double time(Operation operation) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / SIZE;
+	}
+}
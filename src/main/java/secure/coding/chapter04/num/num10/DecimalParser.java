@@ -0,0 +1,334 @@
+package secure.coding.chapter04.num.num10;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * @rule: NUM10-J. Do not construct BigDecimal objects from floating-point
+ *        literals
+ *
+ * @description: Parses decimal text, such as new BigDecimal("0.1") does, into
+ *               an unscaled long and a scale, without creating a String or a
+ *               BigDecimal. The value is unscaled * 10^-scale exactly, with
+ *               the unscaled value and the scale BigDecimal would give: 1.50
+ *               is 150 with scale 2, 1.5E3 is 15 with scale -2.
+ *
+ *               The accepted syntax is that of new BigDecimal(String) with
+ *               ASCII digits only: an optional sign, digits with an optional
+ *               decimal point, and an optional exponent. A long holds any 18
+ *               digits, so only values with more significant digits fall back
+ *               to a BigDecimal, which Result then carries instead.
+ */
+public final class DecimalParser {
+
+	// every number of up to this many digits fits in a long
+	static final int MAX_DIGITS = 18;
+
+	private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private DecimalParser() {
+	}
+
+	/**
+	 * @description: A parsed decimal. The parse methods fill a Result passed
+	 *               in by the caller, so a loop can reuse one and parse
+	 *               without allocating.
+	 */
+	public static final class Result implements Comparable<Result> {
+		private long unscaled;
+		private int scale;
+		private BigDecimal big;
+
+		// whether the value is held as a long; false after a BigDecimal fallback
+		public boolean isCompact() {
+			return big == null;
+		}
+
+		public long getUnscaled() {
+			if (big != null) {
+				throw new ArithmeticException("More than " + MAX_DIGITS + " digits: " + big);
+			}
+			return unscaled;
+		}
+
+		public int getScale() {
+			return big == null ? scale : big.scale();
+		}
+
+		public int signum() {
+			return big == null ? Long.signum(unscaled) : big.signum();
+		}
+
+		public BigDecimal toBigDecimal() {
+			return big == null ? BigDecimal.valueOf(unscaled, scale) : big;
+		}
+
+		/**
+		 * @description: The value as a long with targetScale digits after the
+		 *               point, rounded with mode. Throws an ArithmeticException
+		 *               if it does not fit in a long, or if mode is UNNECESSARY
+		 *               and digits would be lost.
+		 */
+		public long toScaled(int targetScale, RoundingMode mode) {
+			if (big != null) {
+				return big.setScale(targetScale, mode).unscaledValue().longValueExact();
+			}
+			return rescale(unscaled, scale, targetScale, mode);
+		}
+
+		// compares numerically, like BigDecimal.compareTo: 1.50 equals 1.5
+		@Override
+		public int compareTo(Result other) {
+			if (big != null || other.big != null) {
+				return toBigDecimal().compareTo(other.toBigDecimal());
+			}
+			int sign = Long.signum(unscaled);
+			int otherSign = Long.signum(other.unscaled);
+			if (sign != otherSign || sign == 0) {
+				return Integer.compare(sign, otherSign);
+			}
+			if (scale == other.scale) {
+				return Long.compare(unscaled, other.unscaled);
+			}
+			if (scale < other.scale) {
+				return compareAligned(unscaled, (long) other.scale - scale, other.unscaled, sign);
+			}
+			return -compareAligned(other.unscaled, (long) scale - other.scale, unscaled, sign);
+		}
+
+		@Override
+		public String toString() {
+			return toBigDecimal().toString();
+		}
+
+		void set(long unscaled, int scale) {
+			this.unscaled = unscaled;
+			this.scale = scale;
+			this.big = null;
+		}
+
+		void set(BigDecimal big) {
+			this.big = big;
+		}
+
+		// compares a * 10^shift with b, both of the given sign
+		private static int compareAligned(long a, long shift, long b, int sign) {
+			// |a| has at most 18 digits, so a * 10^shift overflows past that only
+			if (shift > MAX_DIGITS || Math.abs(a) > Long.MAX_VALUE / POWERS_OF_TEN[(int) shift]) {
+				return sign;
+			}
+			return Long.compare(a * POWERS_OF_TEN[(int) shift], b);
+		}
+	}
+
+	public static Result parse(CharSequence text) {
+		return parse(text, new Result());
+	}
+
+	public static Result parse(CharSequence text, Result into) {
+		return parse(text, null, 0, text.length(), into);
+	}
+
+	/**
+	 * @description: Parses length ASCII bytes of bytes from offset, such as a
+	 *               field of a record read from a feed.
+	 */
+	public static Result parse(byte[] bytes, int offset, int length, Result into) {
+		if (offset < 0 || length < 0 || offset > bytes.length - length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + bytes.length);
+		}
+		return parse(null, bytes, offset, length, into);
+	}
+
+	/**
+	 * @description: Parses text straight into a fixed-point long with
+	 *               targetScale digits after the point: parseScaled("12.345",
+	 *               2, HALF_EVEN) is 1234.
+	 */
+	public static long parseScaled(CharSequence text, int targetScale, RoundingMode mode) {
+		Result result = parse(text, null, 0, text.length(), new Result());
+		return result.toScaled(targetScale, mode);
+	}
+
+	public static long parseScaled(CharSequence text, int targetScale, RoundingMode mode, Result scratch) {
+		return parse(text, null, 0, text.length(), scratch).toScaled(targetScale, mode);
+	}
+
+	public static long parseScaled(byte[] bytes, int offset, int length, int targetScale, RoundingMode mode,
+			Result scratch) {
+		return parse(bytes, offset, length, scratch).toScaled(targetScale, mode);
+	}
+
+	// reads from text, or from bytes when text is null
+	private static Result parse(CharSequence text, byte[] bytes, int offset, int length, Result into) {
+		int end = offset + length;
+		int i = offset;
+		boolean negative = false;
+		if (i < end) {
+			char c = charAt(text, bytes, i);
+			if (c == '-' || c == '+') {
+				negative = c == '-';
+				i++;
+			}
+		}
+		long unscaled = 0;
+		int digits = 0;
+		int digitsBeforePoint = -1;
+		int start = i;
+		for (; i < end; i++) {
+			int digit = charAt(text, bytes, i) - '0';
+			if (digit >= 0 && digit <= 9) {
+				// leading zeros leave unscaled at 0, so it overflows only past 18 significant digits
+				unscaled = unscaled * 10 + digit;
+				digits++;
+			} else if (digit == '.' - '0' && digitsBeforePoint < 0) {
+				digitsBeforePoint = digits;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			throw invalid(text, bytes, offset, length);
+		}
+		long fraction = digitsBeforePoint < 0 ? 0 : digits - digitsBeforePoint;
+		boolean compact = digits <= MAX_DIGITS || significantDigits(text, bytes, start, i) <= MAX_DIGITS;
+		long exponent = 0;
+		if (i < end) {
+			char c = charAt(text, bytes, i);
+			if (c != 'e' && c != 'E') {
+				throw invalid(text, bytes, offset, length);
+			}
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (charAt(text, bytes, i) == '-' || charAt(text, bytes, i) == '+')) {
+				negativeExponent = charAt(text, bytes, i) == '-';
+				i++;
+			}
+			if (i == end) {
+				throw invalid(text, bytes, offset, length);
+			}
+			for (; i < end; i++) {
+				c = charAt(text, bytes, i);
+				if (c < '0' || c > '9') {
+					throw invalid(text, bytes, offset, length);
+				}
+				exponent = exponent * 10 + (c - '0');
+				if (exponent > Integer.MAX_VALUE) {
+					throw new NumberFormatException("Exponent out of range: " + source(text, bytes, offset, length));
+				}
+			}
+			if (negativeExponent) {
+				exponent = -exponent;
+			}
+		}
+		long scale = fraction - exponent;
+		if (scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Scale out of range: " + source(text, bytes, offset, length));
+		}
+		if (!compact) {
+			into.set(new BigDecimal(chars(text, bytes, offset, length)));
+		} else {
+			into.set(negative ? -unscaled : unscaled, (int) scale);
+		}
+		return into;
+	}
+
+	/**
+	 * @description: unscaled * 10^-scale as a long with targetScale digits
+	 *               after the point.
+	 */
+	static long rescale(long unscaled, int scale, int targetScale, RoundingMode mode) {
+		long shift = (long) targetScale - scale;
+		if (unscaled == 0) {
+			return 0;
+		}
+		if (shift >= 0) {
+			if (shift > MAX_DIGITS) {
+				throw new ArithmeticException("Overflow: " + BigDecimal.valueOf(unscaled, scale));
+			}
+			return Math.multiplyExact(unscaled, POWERS_OF_TEN[(int) shift]);
+		}
+		if (shift < -MAX_DIGITS) {
+			// the value is below a tenth of a unit of targetScale; only its sign matters
+			return divide(Long.signum(unscaled), 10, mode);
+		}
+		return divide(unscaled, POWERS_OF_TEN[(int) -shift], mode);
+	}
+
+	private static long divide(long dividend, long divisor, RoundingMode mode) {
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0) {
+			return quotient;
+		}
+		// both are positive or remainder has the sign of the dividend; divisor is positive
+		int sign = remainder < 0 ? -1 : 1;
+		int half = Long.compare(Math.abs(remainder), divisor - Math.abs(remainder));
+		boolean away;
+		switch (mode) {
+		case UP:
+			away = true;
+			break;
+		case DOWN:
+			away = false;
+			break;
+		case CEILING:
+			away = sign > 0;
+			break;
+		case FLOOR:
+			away = sign < 0;
+			break;
+		case HALF_UP:
+			away = half >= 0;
+			break;
+		case HALF_DOWN:
+			away = half > 0;
+			break;
+		case HALF_EVEN:
+			away = half > 0 || half == 0 && (quotient & 1) != 0;
+			break;
+		default:
+			throw new ArithmeticException("Rounding necessary");
+		}
+		return away ? quotient + sign : quotient;
+	}
+
+	// the digits from the first nonzero one on, between from and to
+	private static int significantDigits(CharSequence text, byte[] bytes, int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			char c = charAt(text, bytes, i);
+			if (c >= '1' && c <= '9' || c == '0' && count > 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static char charAt(CharSequence text, byte[] bytes, int i) {
+		return text != null ? text.charAt(i) : (char) (bytes[i] & 0xFF);
+	}
+
+	private static char[] chars(CharSequence text, byte[] bytes, int offset, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = charAt(text, bytes, offset + i);
+		}
+		return chars;
+	}
+
+	private static String source(CharSequence text, byte[] bytes, int offset, int length) {
+		return new String(chars(text, bytes, offset, length));
+	}
+
+	private static NumberFormatException invalid(CharSequence text, byte[] bytes, int offset, int length) {
+		return new NumberFormatException("Not a decimal number: " + source(text, bytes, offset, length));
+	}
+}
@@ -0,0 +1,107 @@
+package secure.coding.chapter04.num.num10;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * @rule: NUM10-J. Do not construct BigDecimal objects from floating-point
+ *        literals
+ *
+ * @description: Times new BigDecimal(String) against DecimalParser on 1M
+ *               prices with up to 8 decimals, parsed from Strings and from one
+ *               byte buffer of comma separated fields, then the comparison of
+ *               two parsed values as in FloatingPointString.compare.
+ */
+public class DecimalParserBenchmark {
+
+	private static final int SIZE = 1 << 20;
+	private static final int ROUNDS = 5;
+
+	static long sink;
+
+	interface Operation {
+		long run();
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		final String[] texts = new String[SIZE];
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < SIZE; i++) {
+			texts[i] = BigDecimal.valueOf(random.nextInt(100000000), random.nextInt(9)).toPlainString();
+			csv.append(texts[i]).append(',');
+		}
+		final byte[] bytes = csv.toString().getBytes(StandardCharsets.US_ASCII);
+		final DecimalParser.Result scratch = new DecimalParser.Result();
+		final DecimalParser.Result other = DecimalParser.parse("0.001");
+		final BigDecimal otherDecimal = new BigDecimal("0.001");
+
+		System.out.format("%-36s %8s%n", "", "ns/value");
+		report("new BigDecimal(String)", () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += new BigDecimal(text).scale();
+			}
+			return total;
+		});
+		report("DecimalParser.parse(CharSequence)", () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += DecimalParser.parse(text, scratch).getUnscaled();
+			}
+			return total;
+		});
+		report("DecimalParser.parse(byte[])", () -> {
+			long total = 0;
+			int start = 0;
+			for (int i = 0; i < bytes.length; i++) {
+				if (bytes[i] == ',') {
+					total += DecimalParser.parse(bytes, start, i - start, scratch).getUnscaled();
+					start = i + 1;
+				}
+			}
+			return total;
+		});
+		report("BigDecimal setScale(4)", () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += new BigDecimal(text).setScale(4, RoundingMode.HALF_EVEN).unscaledValue().longValue();
+			}
+			return total;
+		});
+		report("DecimalParser.parseScaled(4)", () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += DecimalParser.parseScaled(text, 4, RoundingMode.HALF_EVEN, scratch);
+			}
+			return total;
+		});
+		report("BigDecimal compareTo", () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += new BigDecimal(text).compareTo(otherDecimal);
+			}
+			return total;
+		});
+		report("DecimalParser compareTo", () -> {
+			long total = 0;
+			for (String text : texts) {
+				total += DecimalParser.parse(text, scratch).compareTo(other);
+			}
+			return total;
+		});
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static void report(String name, Operation operation) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.format("%-36s %8.2f%n", name, (double) best / SIZE);
+	}
+}
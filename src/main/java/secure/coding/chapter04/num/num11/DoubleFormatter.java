@@ -0,0 +1,504 @@
+package secure.coding.chapter04.num.num11;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @rule: NUM11-J. Do not compare or inspect the string representation of
+ *        floating-point values
+ *
+ * @description: Writes doubles as text without creating Strings. The
+ *               shortest form has the fewest digits that Double.parseDouble
+ *               reads back as the same double, found with the Ryu algorithm of
+ *               Ulf Adams; it is laid out like Double.toString, 0.001 as 0.001
+ *               and 1.0E7 in scientific notation, but Double.toString of Java
+ *               8 sometimes prints more digits than needed. The fixed form
+ *               prints a given number of decimals of the exact binary value,
+ *               rounded with an explicit RoundingMode, which is what
+ *               new BigDecimal(value).setScale(scale, mode) gives; String.format
+ *               instead rounds the already rounded decimal digits.
+ *
+ *               As _compare shows, the text is for output only; values should
+ *               still be compared as numbers. A formatter keeps a small
+ *               scratch buffer and must not be shared between threads.
+ */
+public final class DoubleFormatter {
+
+	// the longest shortest form, such as -2.2250738585072014E-308
+	public static final int MAX_LENGTH = 24;
+
+	private static final int POW5_BITCOUNT = 121;
+	private static final int POW5_INV_BITCOUNT = 122;
+	private static final int[][] POW5_SPLIT = new int[326][4];
+	private static final int[][] POW5_INV_SPLIT = new int[291][4];
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		BigInteger mask = BigInteger.ONE.shiftLeft(31).subtract(BigInteger.ONE);
+		for (int i = 0; i < POW5_SPLIT.length; i++) {
+			BigInteger pow = BigInteger.valueOf(5).pow(i);
+			int length = pow.bitLength();
+			if (length != pow5bits(i)) {
+				throw new IllegalStateException("Bit length of 5^" + i + " is " + length);
+			}
+			for (int j = 0; j < 4; j++) {
+				POW5_SPLIT[i][j] = pow.shiftRight(length - POW5_BITCOUNT + (3 - j) * 31).and(mask).intValue();
+			}
+			if (i < POW5_INV_SPLIT.length) {
+				BigInteger inverse = BigInteger.ONE.shiftLeft(length - 1 + POW5_INV_BITCOUNT).divide(pow)
+						.add(BigInteger.ONE);
+				for (int j = 0; j < 4; j++) {
+					BigInteger part = inverse.shiftRight((3 - j) * 31);
+					POW5_INV_SPLIT[i][j] = (j == 0 ? part : part.and(mask)).intValue();
+				}
+			}
+		}
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final byte[] scratch = new byte[32];
+
+	// the shortest decimal of the last decompose: digits * 10^exponent
+	private long digits;
+	private int exponent;
+
+	/**
+	 * @description: Appends the shortest form of value; NaN and the infinities
+	 *               are written as by Double.toString.
+	 */
+	public StringBuilder append(StringBuilder sb, double value) {
+		int length = write(value, scratch, 0);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) scratch[i]);
+		}
+		return sb;
+	}
+
+	public ByteBuffer put(ByteBuffer buffer, double value) {
+		return buffer.put(scratch, 0, write(value, scratch, 0));
+	}
+
+	/**
+	 * @description: Writes the shortest form of value as ASCII from offset,
+	 *               which needs at most MAX_LENGTH bytes, and returns the
+	 *               offset after it.
+	 */
+	public int write(double value, byte[] buffer, int offset) {
+		long bits = Double.doubleToRawLongBits(value);
+		int pos = offset;
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return writeAscii(Double.isNaN(value) ? "NaN" : value > 0 ? "Infinity" : "-Infinity", buffer, pos);
+		}
+		if (bits < 0) {
+			buffer[pos++] = '-';
+		}
+		if ((bits & Long.MAX_VALUE) == 0) {
+			return writeAscii("0.0", buffer, pos);
+		}
+		decompose(bits);
+		int length = decimalLength(digits);
+		// the power of ten of the first digit
+		int scientific = exponent + length - 1;
+		if (scientific < -3 || scientific >= 7) {
+			writeDigits(digits, length, buffer, pos + 1);
+			buffer[pos] = buffer[pos + 1];
+			buffer[pos + 1] = '.';
+			pos += length + 1;
+			if (length == 1) {
+				buffer[pos++] = '0';
+			}
+			buffer[pos++] = 'E';
+			if (scientific < 0) {
+				buffer[pos++] = '-';
+				scientific = -scientific;
+			}
+			return writeDigits(scientific, decimalLength(scientific), buffer, pos);
+		}
+		if (scientific < 0) {
+			buffer[pos++] = '0';
+			buffer[pos++] = '.';
+			for (int i = -1; i > scientific; i--) {
+				buffer[pos++] = '0';
+			}
+			return writeDigits(digits, length, buffer, pos);
+		}
+		if (exponent >= 0) {
+			pos = writeDigits(digits, length, buffer, pos);
+			for (int i = 0; i < exponent; i++) {
+				buffer[pos++] = '0';
+			}
+			buffer[pos++] = '.';
+			buffer[pos++] = '0';
+			return pos;
+		}
+		// a point inside the digits: write them one place to the right, then move the integer part back
+		int integer = scientific + 1;
+		int end = writeDigits(digits, length, buffer, pos + 1);
+		System.arraycopy(buffer, pos + 1, buffer, pos, integer);
+		buffer[pos + integer] = '.';
+		return end;
+	}
+
+	public String toString(double value) {
+		return new String(scratch, 0, write(value, scratch, 0), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @description: Appends value with scale decimals, rounded with mode,
+	 *               such as 1234.50 for scale 2. Values beyond the range of a
+	 *               long in units of the scale, and scales beyond 18, go
+	 *               through BigDecimal.
+	 */
+	public StringBuilder appendFixed(StringBuilder sb, double value, int scale, RoundingMode mode) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return sb.append(value);
+		}
+		long scaled = scaledOrMinValue(value, scale, mode);
+		if (scaled == Long.MIN_VALUE) {
+			return sb.append(new BigDecimal(value).setScale(scale, mode).toPlainString());
+		}
+		int length = writeFixed(scaled, scale, scratch, 0);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) scratch[i]);
+		}
+		return sb;
+	}
+
+	// writes the fixed form of value from offset and returns the offset after it
+	public int writeFixed(double value, int scale, RoundingMode mode, byte[] buffer, int offset) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return writeAscii(Double.toString(value), buffer, offset);
+		}
+		long scaled = scaledOrMinValue(value, scale, mode);
+		if (scaled == Long.MIN_VALUE) {
+			return writeAscii(new BigDecimal(value).setScale(scale, mode).toPlainString(), buffer, offset);
+		}
+		return writeFixed(scaled, scale, buffer, offset);
+	}
+
+	// sets digits and exponent to the shortest decimal that reads back as the double
+	private void decompose(long bits) {
+		int ieeeExponent = (int) ((bits >>> 52) & 0x7FF);
+		long ieeeMantissa = bits & ((1L << 52) - 1);
+		int e2;
+		long m2;
+		if (ieeeExponent == 0) {
+			e2 = 1 - 1023 - 52 - 2;
+			m2 = ieeeMantissa;
+		} else {
+			e2 = ieeeExponent - 1023 - 52 - 2;
+			m2 = ieeeMantissa | 1L << 52;
+		}
+		// with round half even parsing, the bounds are in the interval when the mantissa is even
+		boolean acceptBounds = (m2 & 1) == 0;
+
+		// the double, and the halfway points to its neighbours, times 4
+		long mv = 4 * m2;
+		int mmShift = m2 != 1L << 52 || ieeeExponent <= 1 ? 1 : 0;
+		long mp = mv + 2;
+		long mm = mv - 1 - mmShift;
+
+		long vr;
+		long vp;
+		long vm;
+		int e10;
+		boolean vmIsTrailingZeros = false;
+		boolean vrIsTrailingZeros = false;
+		if (e2 >= 0) {
+			int q = Math.max(0, ((e2 * 78913) >>> 18) - 1);
+			int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+			int i = -e2 + q + k;
+			vr = mulPow5InvDivPow2(mv, q, i);
+			vp = mulPow5InvDivPow2(mp, q, i);
+			vm = mulPow5InvDivPow2(mm, q, i);
+			e10 = q;
+			if (q <= 21) {
+				if (mv % 5 == 0) {
+					vrIsTrailingZeros = pow5Factor(mv) >= q;
+				} else if (acceptBounds) {
+					vmIsTrailingZeros = pow5Factor(mm) >= q;
+				} else if (pow5Factor(mp) >= q) {
+					vp--;
+				}
+			}
+		} else {
+			int q = Math.max(0, ((-e2 * 732923) >>> 20) - 1);
+			int i = -e2 - q;
+			int k = pow5bits(i) - POW5_BITCOUNT;
+			int j = q - k;
+			vr = mulPow5DivPow2(mv, i, j);
+			vp = mulPow5DivPow2(mp, i, j);
+			vm = mulPow5DivPow2(mm, i, j);
+			e10 = q + e2;
+			if (q <= 1) {
+				// mv has at least two trailing zero bits
+				vrIsTrailingZeros = true;
+				if (acceptBounds) {
+					vmIsTrailingZeros = mmShift == 1;
+				} else {
+					vp--;
+				}
+			} else if (q < 63) {
+				vrIsTrailingZeros = (mv & ((1L << q) - 1)) == 0;
+			}
+		}
+
+		// drop digits while the interval still holds a shorter number
+		int removed = 0;
+		int lastRemovedDigit = 0;
+		long output;
+		if (vmIsTrailingZeros || vrIsTrailingZeros) {
+			while (vp / 10 > vm / 10) {
+				vmIsTrailingZeros &= vm % 10 == 0;
+				vrIsTrailingZeros &= lastRemovedDigit == 0;
+				lastRemovedDigit = (int) (vr % 10);
+				vp /= 10;
+				vr /= 10;
+				vm /= 10;
+				removed++;
+			}
+			if (vmIsTrailingZeros && acceptBounds) {
+				while (vm % 10 == 0) {
+					vrIsTrailingZeros &= lastRemovedDigit == 0;
+					lastRemovedDigit = (int) (vr % 10);
+					vp /= 10;
+					vr /= 10;
+					vm /= 10;
+					removed++;
+				}
+			}
+			if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+				// exactly halfway: round to even
+				lastRemovedDigit = 4;
+			}
+			output = vr + ((vr == vm && !(vmIsTrailingZeros && acceptBounds)) || lastRemovedDigit >= 5 ? 1 : 0);
+		} else {
+			// two digits at a time while possible, which is most of them for short decimals
+			while (vp / 100 > vm / 100) {
+				lastRemovedDigit = (int) (vr % 100) / 10;
+				vp /= 100;
+				vr /= 100;
+				vm /= 100;
+				removed += 2;
+			}
+			while (vp / 10 > vm / 10) {
+				lastRemovedDigit = (int) (vr % 10);
+				vp /= 10;
+				vr /= 10;
+				vm /= 10;
+				removed++;
+			}
+			output = vr + (vr == vm || lastRemovedDigit >= 5 ? 1 : 0);
+		}
+		digits = output;
+		exponent = e10 + removed;
+	}
+
+	/**
+	 * @description: value * 10^scale rounded with mode, computed from the
+	 *               exact binary value, or Long.MIN_VALUE if that does not fit
+	 *               or scale is beyond 18.
+	 */
+	private static long scaledOrMinValue(double value, int scale, RoundingMode mode) {
+		if (scale < 0) {
+			throw new IllegalArgumentException("Negative scale: " + scale);
+		}
+		if (scale >= POWERS_OF_TEN.length) {
+			return Long.MIN_VALUE;
+		}
+		long bits = Double.doubleToRawLongBits(value);
+		int ieeeExponent = (int) ((bits >>> 52) & 0x7FF);
+		long m2 = bits & ((1L << 52) - 1);
+		int e2;
+		if (ieeeExponent == 0) {
+			e2 = 1 - 1023 - 52;
+		} else {
+			e2 = ieeeExponent - 1023 - 52;
+			m2 |= 1L << 52;
+		}
+		if (m2 == 0) {
+			return 0;
+		}
+		int sign = bits < 0 ? -1 : 1;
+		long power = POWERS_OF_TEN[scale];
+		if (e2 >= 0) {
+			// an integer: no rounding, but it has to fit
+			if (e2 >= 63 || m2 > Long.MAX_VALUE / power) {
+				return Long.MIN_VALUE;
+			}
+			long product = m2 * power;
+			if (product > Long.MAX_VALUE >> e2) {
+				return Long.MIN_VALUE;
+			}
+			return sign * (product << e2);
+		}
+		// the 128 bit product m2 * 10^scale, shifted right by -e2
+		long high = unsignedMultiplyHigh(m2, power);
+		long low = m2 * power;
+		int shift = -e2;
+		long quotient;
+		int half;
+		if (shift > 113) {
+			// the product is below 2^113, so the value is below half a unit
+			quotient = 0;
+			half = -1;
+		} else {
+			long quotientHigh;
+			if (shift < 64) {
+				quotient = low >>> shift | high << (64 - shift);
+				quotientHigh = high >>> shift;
+			} else {
+				quotient = high >>> (shift - 64);
+				quotientHigh = 0;
+			}
+			if (quotientHigh != 0 || quotient < 0) {
+				return Long.MIN_VALUE;
+			}
+			int halfBit = shift - 1;
+			boolean halfSet;
+			boolean belowHalf;
+			if (halfBit < 64) {
+				halfSet = (low >>> halfBit & 1) != 0;
+				belowHalf = (low & ((1L << halfBit) - 1)) != 0;
+			} else {
+				halfSet = (high >>> (halfBit - 64) & 1) != 0;
+				belowHalf = low != 0 || (high & ((1L << (halfBit - 64)) - 1)) != 0;
+			}
+			if (!halfSet && !belowHalf) {
+				return sign * quotient;
+			}
+			half = !halfSet ? -1 : belowHalf ? 1 : 0;
+		}
+		boolean away;
+		switch (mode) {
+		case UP:
+			away = true;
+			break;
+		case DOWN:
+			away = false;
+			break;
+		case CEILING:
+			away = sign > 0;
+			break;
+		case FLOOR:
+			away = sign < 0;
+			break;
+		case HALF_UP:
+			away = half >= 0;
+			break;
+		case HALF_DOWN:
+			away = half > 0;
+			break;
+		case HALF_EVEN:
+			away = half > 0 || half == 0 && (quotient & 1) != 0;
+			break;
+		default:
+			throw new ArithmeticException("Rounding necessary");
+		}
+		if (away) {
+			if (quotient == Long.MAX_VALUE) {
+				return Long.MIN_VALUE;
+			}
+			quotient++;
+		}
+		return sign * quotient;
+	}
+
+	private static int writeFixed(long scaled, int scale, byte[] buffer, int pos) {
+		if (scaled < 0) {
+			buffer[pos++] = '-';
+			scaled = -scaled;
+		}
+		long power = POWERS_OF_TEN[scale];
+		long integer = scaled / power;
+		long fraction = scaled % power;
+		pos = writeDigits(integer, decimalLength(integer), buffer, pos);
+		if (scale > 0) {
+			buffer[pos++] = '.';
+			pos = writeDigits(fraction, scale, buffer, pos);
+		}
+		return pos;
+	}
+
+	// writes the length lowest digits of value, with leading zeros if needed
+	private static int writeDigits(long value, int length, byte[] buffer, int pos) {
+		for (int i = pos + length - 1; i >= pos; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return pos + length;
+	}
+
+	private static int writeAscii(String text, byte[] buffer, int pos) {
+		for (int i = 0; i < text.length(); i++) {
+			buffer[pos++] = (byte) text.charAt(i);
+		}
+		return pos;
+	}
+
+	private static int decimalLength(long value) {
+		int length = 1;
+		while (length < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[length]) {
+			length++;
+		}
+		return length;
+	}
+
+	// the bit length of 5^e, for e up to 3528
+	private static int pow5bits(int e) {
+		return ((e * 1217359) >>> 19) + 1;
+	}
+
+	private static int pow5Factor(long value) {
+		int count = 0;
+		while (value > 0 && value % 5 == 0) {
+			value /= 5;
+			count++;
+		}
+		return count;
+	}
+
+	// m * 5^i / 2^j for m of at most 55 bits, with 5^i in four 31 bit parts
+	private static long mulPow5DivPow2(long m, int i, int j) {
+		return mulShift(m, POW5_SPLIT[i], j);
+	}
+
+	private static long mulPow5InvDivPow2(long m, int i, int j) {
+		return mulShift(m, POW5_INV_SPLIT[i], j);
+	}
+
+	private static long mulShift(long m, int[] factor, int j) {
+		long mHigh = m >>> 31;
+		long mLow = m & 0x7FFFFFFF;
+		long bits13 = mHigh * factor[0];
+		long bits03 = mLow * factor[0];
+		long bits12 = mHigh * factor[1];
+		long bits02 = mLow * factor[1];
+		long bits11 = mHigh * factor[2];
+		long bits01 = mLow * factor[2];
+		long bits10 = mHigh * factor[3];
+		long bits00 = mLow * factor[3];
+		int actualShift = j - 3 * 31 - 21;
+		return (((((bits00 >>> 31) + bits01 + bits10 >>> 31) + bits02 + bits11 >>> 31) + bits03 + bits12 >>> 21)
+				+ (bits13 << 10)) >>> actualShift;
+	}
+
+	private static long unsignedMultiplyHigh(long a, long b) {
+		long aHigh = a >>> 32;
+		long aLow = a & 0xFFFFFFFFL;
+		long bHigh = b >>> 32;
+		long bLow = b & 0xFFFFFFFFL;
+		long lowLow = aLow * bLow;
+		long highLow = aHigh * bLow;
+		long lowHigh = aLow * bHigh;
+		long cross = (lowLow >>> 32) + (highLow & 0xFFFFFFFFL) + lowHigh;
+		return aHigh * bHigh + (highLow >>> 32) + (cross >>> 32);
+	}
+}
@@ -0,0 +1,97 @@
+package secure.coding.chapter04.num.num11;
+
+import java.math.RoundingMode;
+import java.util.Random;
+
+/**
+ * @rule: NUM11-J. Do not compare or inspect the string representation of
+ *        floating-point values
+ *
+ * @description: Times Double.toString against DoubleFormatter writing into a
+ *               reused StringBuilder and into a byte array, on random doubles
+ *               in full precision and on amounts with two decimals, then
+ *               String.format("%.2f") against the fixed form.
+ */
+public class DoubleFormatterBenchmark {
+
+	private static final int SIZE = 1 << 18;
+	private static final int ROUNDS = 5;
+
+	static long sink;
+
+	interface Operation {
+		long run();
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		final double[] full = new double[SIZE];
+		final double[] amounts = new double[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			full[i] = Double.longBitsToDouble(random.nextLong() & 0x7FEFFFFFFFFFFFFFL);
+			amounts[i] = random.nextInt(100000000) / 100.0;
+		}
+		final DoubleFormatter formatter = new DoubleFormatter();
+		final StringBuilder sb = new StringBuilder();
+		final byte[] buffer = new byte[SIZE * DoubleFormatter.MAX_LENGTH];
+
+		System.out.format("%-34s %14s %14s%n", "ns/value", "full precision", "amounts");
+		compare("Double.toString", values -> {
+			long total = 0;
+			for (double value : values) {
+				total += Double.toString(value).length();
+			}
+			return total;
+		}, full, amounts);
+		compare("DoubleFormatter.append", values -> {
+			long total = 0;
+			for (double value : values) {
+				sb.setLength(0);
+				total += formatter.append(sb, value).length();
+			}
+			return total;
+		}, full, amounts);
+		compare("DoubleFormatter.write", values -> {
+			int pos = 0;
+			for (double value : values) {
+				pos = formatter.write(value, buffer, pos);
+			}
+			return pos;
+		}, full, amounts);
+		compare("String.format(\"%.2f\")", values -> {
+			long total = 0;
+			for (double value : values) {
+				total += String.format("%.2f", value).length();
+			}
+			return total;
+		}, amounts, amounts);
+		compare("DoubleFormatter.appendFixed(2)", values -> {
+			long total = 0;
+			for (double value : values) {
+				sb.setLength(0);
+				total += formatter.appendFixed(sb, value, 2, RoundingMode.HALF_UP).length();
+			}
+			return total;
+		}, amounts, amounts);
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	interface Formatting {
+		long run(double[] values);
+	}
+
+	private static void compare(String name, Formatting formatting, double[] first, double[] second) {
+		System.out.format("%-34s %14.1f %14.1f%n", name, time(() -> formatting.run(first)),
+				time(() -> formatting.run(second)));
+	}
+
+	private static double time(Operation operation) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / SIZE;
+	}
+}
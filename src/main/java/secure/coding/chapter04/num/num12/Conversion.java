@@ -84,11 +84,19 @@ public class Conversion {
 		System.out.println("a:" + a + ", b:" + b);
 	}
 
+	/**
+	 * @description: Float.MIN_VALUE is the smallest positive float, not the
+	 *               most negative one, so the range is checked on the
+	 *               magnitude: a finite value that the cast turns into an
+	 *               infinity, or a nonzero one that it turns into zero, is out of
+	 *               range whatever its sign.
+	 */
 	static private float toFloat(double value) {
-		if ((value < Float.MIN_VALUE) || (value > Float.MAX_VALUE)) {
+		float result = (float) value;
+		if ((Float.isInfinite(result) && !Double.isInfinite(value)) || (result == 0 && value != 0)) {
 			throw new ArithmeticException("Value is out of range: " + value);
 		}
-		return (float) value;
+		return result;
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,222 @@
+package secure.coding.chapter04.num.num12;
+
+import java.util.Arrays;
+
+/**
+ * @rule: NUM12-J. Ensure conversions of numeric types to narrower types do not
+ *        result in lost or misinterpreted data
+ *
+ * @description: The range checks of Conversion over whole arrays, such as a
+ *               buffer of sensor samples. A Policy says what happens to a
+ *               value out of range of the narrower type: THROW checks the whole
+ *               array before writing anything, SATURATE writes the nearest
+ *               value in range instead, and REPORT saturates too and returns
+ *               the indices of the values it changed.
+ *
+ *               The range checks are arithmetic rather than branches, and
+ *               SATURATE is a min and a max, so the loops are plain counted
+ *               loops the JIT can unroll and vectorize. REPORT checks a block
+ *               at a time and looks for indices only in blocks that have a
+ *               value out of range.
+ *
+ *               For double to float, a value is out of range when the cast
+ *               would make it an infinity or zero although it is neither;
+ *               NaN and the infinities convert as themselves. The precision
+ *               lost by rounding to float is not a violation.
+ */
+public final class NarrowingConversions {
+
+	public enum Policy {
+		THROW, SATURATE, REPORT
+	}
+
+	static final int BLOCK = 256;
+
+	private static final int[] NONE = new int[0];
+
+	// the smallest magnitude the cast to float rounds to infinity, and the largest it rounds to zero
+	private static final double FLOAT_OVERFLOW = 0x1.ffffffp127;
+	private static final double FLOAT_UNDERFLOW = 0x1p-150;
+
+	private NarrowingConversions() {
+	}
+
+	/**
+	 * @description: Converts source into the first source.length elements of
+	 *               target. Returns the indices of the values out of range for
+	 *               REPORT, and an empty array otherwise.
+	 */
+	public static int[] toByte(int[] source, byte[] target, Policy policy) {
+		checkLength(source.length, target.length);
+		if (policy == Policy.THROW) {
+			int outside = 0;
+			for (int value : source) {
+				// nonzero above the low 8 bits when value + 128 is not in 0..255
+				outside |= value + 128;
+			}
+			if ((outside & ~0xFF) != 0) {
+				for (int i = 0; i < source.length; i++) {
+					if (source[i] < Byte.MIN_VALUE || source[i] > Byte.MAX_VALUE) {
+						throw outOfRange(source[i], i);
+					}
+				}
+			}
+			for (int i = 0; i < source.length; i++) {
+				target[i] = (byte) source[i];
+			}
+			return NONE;
+		}
+		for (int i = 0; i < source.length; i++) {
+			target[i] = (byte) Math.min(Math.max(source[i], Byte.MIN_VALUE), Byte.MAX_VALUE);
+		}
+		return policy == Policy.REPORT ? violations(source, 128, ~0xFF) : NONE;
+	}
+
+	public static int[] toShort(int[] source, short[] target, Policy policy) {
+		checkLength(source.length, target.length);
+		if (policy == Policy.THROW) {
+			int outside = 0;
+			for (int value : source) {
+				outside |= value + 32768;
+			}
+			if ((outside & ~0xFFFF) != 0) {
+				for (int i = 0; i < source.length; i++) {
+					if (source[i] < Short.MIN_VALUE || source[i] > Short.MAX_VALUE) {
+						throw outOfRange(source[i], i);
+					}
+				}
+			}
+			for (int i = 0; i < source.length; i++) {
+				target[i] = (short) source[i];
+			}
+			return NONE;
+		}
+		for (int i = 0; i < source.length; i++) {
+			target[i] = (short) Math.min(Math.max(source[i], Short.MIN_VALUE), Short.MAX_VALUE);
+		}
+		return policy == Policy.REPORT ? violations(source, 32768, ~0xFFFF) : NONE;
+	}
+
+	/**
+	 * @description: Converts source into target. SATURATE writes
+	 *               Float.MAX_VALUE for a value too large and Float.MIN_VALUE
+	 *               for one too small, with the sign of the value.
+	 */
+	public static int[] toFloat(double[] source, float[] target, Policy policy) {
+		checkLength(source.length, target.length);
+		if (policy == Policy.THROW) {
+			for (int from = 0; from < source.length; from += BLOCK) {
+				int to = Math.min(from + BLOCK, source.length);
+				if (!inFloatRange(source, from, to)) {
+					for (int i = from; i < to; i++) {
+						if (!inFloatRange(source[i])) {
+							throw outOfRange(source[i], i);
+						}
+					}
+				}
+			}
+			for (int i = 0; i < source.length; i++) {
+				target[i] = (float) source[i];
+			}
+			return NONE;
+		}
+		for (int i = 0; i < source.length; i++) {
+			target[i] = (float) source[i];
+		}
+		Indices indices = new Indices();
+		for (int from = 0; from < source.length; from += BLOCK) {
+			int to = Math.min(from + BLOCK, source.length);
+			if (inFloatRange(source, from, to)) {
+				continue;
+			}
+			for (int i = from; i < to; i++) {
+				double value = source[i];
+				if (!inFloatRange(value)) {
+					target[i] = Math.copySign(Math.abs(value) >= FLOAT_OVERFLOW ? Float.MAX_VALUE : Float.MIN_VALUE,
+							(float) value);
+					if (policy == Policy.REPORT) {
+						indices.add(i);
+					}
+				}
+			}
+		}
+		return indices.toArray();
+	}
+
+	/**
+	 * @description: Converts value like Conversion.toFloat, with the given
+	 *               policy for a single value; REPORT is the same as SATURATE.
+	 */
+	public static float toFloat(double value, Policy policy) {
+		if (inFloatRange(value)) {
+			return (float) value;
+		}
+		if (policy == Policy.THROW) {
+			throw new ArithmeticException("Value is out of range: " + value);
+		}
+		return Math.copySign(Math.abs(value) >= FLOAT_OVERFLOW ? Float.MAX_VALUE : Float.MIN_VALUE, (float) value);
+	}
+
+	static boolean inFloatRange(double value) {
+		double magnitude = Math.abs(value);
+		return !(magnitude >= FLOAT_OVERFLOW && magnitude != Double.POSITIVE_INFINITY
+				|| magnitude <= FLOAT_UNDERFLOW && magnitude != 0);
+	}
+
+	// counts the values out of range instead of stopping at the first, so the loop has no exit
+	private static boolean inFloatRange(double[] source, int from, int to) {
+		int outside = 0;
+		for (int i = from; i < to; i++) {
+			outside += inFloatRange(source[i]) ? 0 : 1;
+		}
+		return outside == 0;
+	}
+
+	// the indices of the values for which value + offset has a bit of mask set
+	private static int[] violations(int[] source, int offset, int mask) {
+		Indices indices = new Indices();
+		for (int from = 0; from < source.length; from += BLOCK) {
+			int to = Math.min(from + BLOCK, source.length);
+			int outside = 0;
+			for (int i = from; i < to; i++) {
+				outside |= source[i] + offset;
+			}
+			if ((outside & mask) == 0) {
+				continue;
+			}
+			for (int i = from; i < to; i++) {
+				if (((source[i] + offset) & mask) != 0) {
+					indices.add(i);
+				}
+			}
+		}
+		return indices.toArray();
+	}
+
+	// the indices of the values out of range, in a growing array
+	private static final class Indices {
+		private int[] values = NONE;
+		private int count;
+
+		void add(int index) {
+			if (count == values.length) {
+				values = Arrays.copyOf(values, Math.max(8, count * 2));
+			}
+			values[count++] = index;
+		}
+
+		int[] toArray() {
+			return count == values.length ? values : Arrays.copyOf(values, count);
+		}
+	}
+
+	private static void checkLength(int sourceLength, int targetLength) {
+		if (targetLength < sourceLength) {
+			throw new IllegalArgumentException("Target shorter than source: " + targetLength + " < " + sourceLength);
+		}
+	}
+
+	private static ArithmeticException outOfRange(Object value, int index) {
+		return new ArithmeticException("Value is out of range: " + value + " at index " + index);
+	}
+}
@@ -0,0 +1,82 @@
+package secure.coding.chapter04.num.num12;
+
+import java.util.Random;
+
+import secure.coding.chapter04.num.num12.NarrowingConversions.Policy;
+
+/**
+ * @rule: NUM12-J. Ensure conversions of numeric types to narrower types do not
+ *        result in lost or misinterpreted data
+ *
+ * @description: Times the element-wise checks of workWith and toFloat against
+ *               NarrowingConversions under each policy, on 1M samples in range
+ *               and on samples of which one in a thousand is out of range.
+ */
+public class NarrowingConversionsBenchmark {
+
+	private static final int SIZE = 1 << 20;
+	private static final int ROUNDS = 5;
+
+	static long sink;
+
+	interface Operation {
+		long run();
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		final int[] samples = new int[SIZE];
+		final int[] noisy = new int[SIZE];
+		final double[] readings = new double[SIZE];
+		final double[] spiky = new double[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			samples[i] = random.nextInt(256) - 128;
+			noisy[i] = i % 1000 == 0 ? 1000 : samples[i];
+			readings[i] = random.nextGaussian() * 1e6;
+			spiky[i] = i % 1000 == 0 ? 1e300 : readings[i];
+		}
+		final byte[] bytes = new byte[SIZE];
+		final short[] shorts = new short[SIZE];
+		final float[] floats = new float[SIZE];
+
+		System.out.format("%-34s %8s%n", "", "ns/value");
+		report("int to byte, element-wise check", () -> {
+			for (int i = 0; i < SIZE; i++) {
+				int value = samples[i];
+				if ((value < Byte.MIN_VALUE) || (value > Byte.MAX_VALUE)) {
+					throw new ArithmeticException("Value is out of range: " + value);
+				}
+				bytes[i] = (byte) value;
+			}
+			return bytes[SIZE - 1];
+		});
+		for (Policy policy : Policy.values()) {
+			report("int to byte, " + policy, () -> NarrowingConversions.toByte(samples, bytes, policy).length);
+		}
+		report("int to byte, 0.1% out, SATURATE", () -> NarrowingConversions.toByte(noisy, bytes, Policy.SATURATE).length);
+		report("int to byte, 0.1% out, REPORT", () -> NarrowingConversions.toByte(noisy, bytes, Policy.REPORT).length);
+		report("int to short, REPORT", () -> NarrowingConversions.toShort(samples, shorts, Policy.REPORT).length);
+		report("double to float, element-wise check", () -> {
+			for (int i = 0; i < SIZE; i++) {
+				floats[i] = NarrowingConversions.toFloat(readings[i], Policy.THROW);
+			}
+			return (long) floats[SIZE - 1];
+		});
+		for (Policy policy : Policy.values()) {
+			report("double to float, " + policy, () -> NarrowingConversions.toFloat(readings, floats, policy).length);
+		}
+		report("double to float, 0.1% out, REPORT",
+				() -> NarrowingConversions.toFloat(spiky, floats, Policy.REPORT).length);
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	private static void report(String name, Operation operation) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.format("%-34s %8.2f%n", name, (double) best / SIZE);
+	}
+}
@@ -0,0 +1,67 @@
+package secure.coding.chapter09.fio.fio02;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Creates a tree of small files and deletes it again, first with a sequential
+ * walk of File.delete that ignores the results, then with BulkDeleter on pools
+ * of 1 to 2x the processors, and once more with a rate limit.
+ *
+ * Usage: BulkDeleteBenchmark [dir [directories [filesPerDirectory]]]
+ */
+public class BulkDeleteBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		Path base = Paths.get(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+		int directories = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int files = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		Path root = createTree(base, directories, files);
+		long start = System.nanoTime();
+		deleteRecursively(root.toFile());
+		long nanos = System.nanoTime() - start;
+		System.out.format("%-24s %8.1f ms %10.0f/s%n", "File.delete sequential", nanos / 1e6,
+				(directories * (files + 1) + 1) / (nanos / 1e9));
+
+		for (int threads = 1; threads <= 2 * processors; threads *= 2) {
+			root = createTree(base, directories, files);
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			BulkDeleter.Report report = new BulkDeleter(pool, 0, null).delete(root);
+			pool.shutdown();
+			System.out.format("%-24s %s%n", "BulkDeleter " + threads + " threads", report);
+		}
+
+		root = createTree(base, 10, 100);
+		BulkDeleter.Report report = new BulkDeleter(ForkJoinPool.commonPool(), 2000, null).delete(root);
+		System.out.format("%-24s %s%n", "BulkDeleter 2000/s", report);
+	}
+
+	private static Path createTree(Path base, int directories, int files) throws IOException {
+		Path root = Files.createTempDirectory(base, "bulkdelete");
+		byte[] content = new byte[128];
+		for (int d = 0; d < directories; d++) {
+			Path dir = Files.createDirectory(root.resolve("d" + d));
+			for (int f = 0; f < files; f++) {
+				Files.write(dir.resolve("f" + f), content);
+			}
+		}
+		return root;
+	}
+
+	// the noncompliant style: every result is ignored
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,433 @@
+package secure.coding.chapter09.fio.fio02;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Deletes directory trees in parallel with Files.delete, the compliant way of
+ * FIO02-J, and checks every result without stopping at the first failure.
+ *
+ * Each directory is listed by its own fork/join task, which forks a task for
+ * every subdirectory and for every BATCH files it lists, so a flat directory
+ * of millions of files is deleted by all the threads of the pool. The files
+ * left over are deleted by the listing task itself, and the directory once
+ * all its children are gone. A directory with a child that could not be
+ * deleted is left in place and reported as skipped. Symbolic links are deleted, never followed, so the walk
+ * cannot leave the tree.
+ *
+ * Where the file system offers a SecureDirectoryStream, as on Linux, every
+ * directory below a root is opened relative to its open parent without
+ * following links, and its entries are deleted relative to it, so replacing a
+ * directory by a link during the walk cannot redirect it. Elsewhere a
+ * directory is opened by path and its file key is checked again after the
+ * open, which narrows that window but cannot close it.
+ *
+ * Nothing is thrown during the walk. Every failure is kept in the report with
+ * its exception, and every result can also be passed to a listener, which is
+ * called from the worker threads.
+ */
+public class BulkDeleter {
+
+	public enum Status {
+		DELETED, NOT_FOUND, FAILED, SKIPPED
+	}
+
+	public static final class Result {
+		private final Path path;
+		private final boolean directory;
+		private final Status status;
+		private final Exception cause;
+
+		Result(Path path, boolean directory, Status status, Exception cause) {
+			this.path = path;
+			this.directory = directory;
+			this.status = status;
+			this.cause = cause;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		// the exception of a failed deletion, null otherwise
+		public Exception getCause() {
+			return cause;
+		}
+
+		@Override
+		public String toString() {
+			return status + " " + path + (cause == null ? "" : ": " + cause);
+		}
+	}
+
+	public static final class Report {
+		private final long filesDeleted;
+		private final long directoriesDeleted;
+		private final long notFound;
+		private final long skipped;
+		private final long elapsedNanos;
+		private final List<Result> failures;
+
+		Report(long filesDeleted, long directoriesDeleted, long notFound, long skipped, long elapsedNanos,
+				List<Result> failures) {
+			this.filesDeleted = filesDeleted;
+			this.directoriesDeleted = directoriesDeleted;
+			this.notFound = notFound;
+			this.skipped = skipped;
+			this.elapsedNanos = elapsedNanos;
+			this.failures = Collections.unmodifiableList(failures);
+		}
+
+		public long getFilesDeleted() {
+			return filesDeleted;
+		}
+
+		public long getDirectoriesDeleted() {
+			return directoriesDeleted;
+		}
+
+		// already gone when their turn came, which is not a failure
+		public long getNotFound() {
+			return notFound;
+		}
+
+		public long getSkipped() {
+			return skipped;
+		}
+
+		public List<Result> getFailures() {
+			return failures;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public double getDeletionsPerSecond() {
+			return (filesDeleted + directoriesDeleted) / Math.max(elapsedNanos / 1e9, 1e-9);
+		}
+
+		// number of failures by exception class
+		public Map<String, Integer> getFailuresByCause() {
+			Map<String, Integer> counts = new TreeMap<>();
+			for (Result failure : failures) {
+				String name = failure.getCause().getClass().getSimpleName();
+				Integer count = counts.get(name);
+				counts.put(name, count == null ? 1 : count + 1);
+			}
+			return counts;
+		}
+
+		public boolean isComplete() {
+			return failures.isEmpty() && skipped == 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("deleted %d files and %d directories in %.1f ms (%.0f/s), %d not found, "
+					+ "%d failed %s, %d skipped", filesDeleted, directoriesDeleted, elapsedNanos / 1e6,
+					getDeletionsPerSecond(), notFound, failures.size(), getFailuresByCause(), skipped);
+		}
+	}
+
+	// files deleted by one task
+	static final int BATCH = 1024;
+
+	private final ForkJoinPool pool;
+	private final long nanosPerDeletion;
+	private final Consumer<Result> listener;
+
+	public BulkDeleter() {
+		this(ForkJoinPool.commonPool(), 0, null);
+	}
+
+	/**
+	 * @param pool
+	 *            the threads that list and delete, which also bounds the
+	 *            number of concurrent requests to the disk
+	 * @param maxDeletionsPerSecond
+	 *            the rate to stay under across all threads, 0 for no limit
+	 * @param listener
+	 *            called with every result, or null
+	 */
+	public BulkDeleter(ForkJoinPool pool, double maxDeletionsPerSecond, Consumer<Result> listener) {
+		if (maxDeletionsPerSecond < 0) {
+			throw new IllegalArgumentException("Negative rate: " + maxDeletionsPerSecond);
+		}
+		this.pool = pool;
+		this.nanosPerDeletion = maxDeletionsPerSecond == 0 ? 0 : (long) (1e9 / maxDeletionsPerSecond);
+		this.listener = listener;
+	}
+
+	public Report delete(Path root) {
+		return delete(Collections.singletonList(root));
+	}
+
+	public Report delete(Collection<Path> roots) {
+		Walk walk = new Walk();
+		long start = System.nanoTime();
+		walk.nextPermit.set(start);
+		List<DeleteTask> tasks = new ArrayList<>(roots.size());
+		for (Path root : roots) {
+			tasks.add(new DeleteTask(walk, root, null));
+		}
+		pool.invoke(new RecursiveTask<Void>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected Void compute() {
+				invokeAll(tasks);
+				return null;
+			}
+		});
+		return new Report(walk.filesDeleted.get(), walk.directoriesDeleted.get(), walk.notFound.get(),
+				walk.skipped.get(), System.nanoTime() - start, new ArrayList<>(walk.failures));
+	}
+
+	// the state of one call to delete, shared by its tasks
+	private final class Walk {
+		final AtomicLong filesDeleted = new AtomicLong();
+		final AtomicLong directoriesDeleted = new AtomicLong();
+		final AtomicLong notFound = new AtomicLong();
+		final AtomicLong skipped = new AtomicLong();
+		final AtomicLong nextPermit = new AtomicLong();
+		final ConcurrentLinkedQueue<Result> failures = new ConcurrentLinkedQueue<>();
+
+		// waits for the next slot of the rate limit
+		void throttle() {
+			if (nanosPerDeletion == 0) {
+				return;
+			}
+			long slot = nextPermit.getAndAdd(nanosPerDeletion);
+			long wait = slot - System.nanoTime();
+			if (wait > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			} else if (wait < -nanosPerDeletion) {
+				// do not let an idle period build up a burst
+				nextPermit.compareAndSet(slot + nanosPerDeletion, System.nanoTime());
+			}
+		}
+
+		// returns whether the path is gone; deletes relative to parent when there is one
+		boolean deleteOne(SecureDirectoryStream<Path> parent, Path path, boolean directory) {
+			throttle();
+			Result result;
+			try {
+				if (parent == null) {
+					Files.delete(path);
+				} else if (directory) {
+					parent.deleteDirectory(path.getFileName());
+				} else {
+					parent.deleteFile(path.getFileName());
+				}
+				(directory ? directoriesDeleted : filesDeleted).incrementAndGet();
+				result = new Result(path, directory, Status.DELETED, null);
+			} catch (NoSuchFileException e) {
+				missing(path, directory);
+				return true;
+			} catch (IOException | SecurityException e) {
+				result = new Result(path, directory, Status.FAILED, e);
+				failures.add(result);
+			}
+			report(result);
+			return result.getStatus() != Status.FAILED;
+		}
+
+		// already gone when its turn came, to be deleted or to be listed
+		void missing(Path path, boolean directory) {
+			notFound.incrementAndGet();
+			report(new Result(path, directory, Status.NOT_FOUND, null));
+		}
+
+		void skip(Path path) {
+			skipped.incrementAndGet();
+			report(new Result(path, true, Status.SKIPPED, null));
+		}
+
+		void fail(Path path, Exception e) {
+			Result result = new Result(path, true, Status.FAILED, e);
+			failures.add(result);
+			report(result);
+		}
+
+		private void report(Result result) {
+			if (listener != null) {
+				listener.accept(result);
+			}
+		}
+	}
+
+	private static final class DeleteTask extends RecursiveTask<Boolean> {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Walk walk;
+		// the full path, for the results
+		private final transient Path path;
+		// the open directory that holds this one, null for a root or without secure streams
+		private final transient SecureDirectoryStream<Path> parent;
+
+		DeleteTask(Walk walk, Path path, SecureDirectoryStream<Path> parent) {
+			this.walk = walk;
+			this.path = path;
+			this.parent = parent;
+		}
+
+		@Override
+		protected Boolean compute() {
+			if (parent == null && !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				return walk.deleteOne(null, path, false);
+			}
+			List<RecursiveTask<Boolean>> children = new ArrayList<>();
+			boolean complete = true;
+			try (DirectoryStream<Path> entries = open()) {
+				SecureDirectoryStream<Path> secure = entries instanceof SecureDirectoryStream
+						? (SecureDirectoryStream<Path>) entries : null;
+				List<Path> files = new ArrayList<>();
+				try {
+					for (Path entry : entries) {
+						Path child = path.resolve(entry.getFileName());
+						if (isDirectory(secure, entry)) {
+							DeleteTask task = new DeleteTask(walk, child, secure);
+							task.fork();
+							children.add(task);
+						} else {
+							files.add(child);
+							if (files.size() == BATCH) {
+								FileBatch batch = new FileBatch(walk, files, secure);
+								batch.fork();
+								children.add(batch);
+								files = new ArrayList<>();
+							}
+						}
+					}
+				} catch (DirectoryIteratorException e) {
+					walk.fail(path, e.getCause());
+					complete = false;
+				} catch (SecurityException e) {
+					walk.fail(path, e);
+					complete = false;
+				}
+				complete &= FileBatch.deleteAll(walk, files, secure);
+				// the children use this stream, so it stays open until they are done
+				for (RecursiveTask<Boolean> task : children) {
+					complete &= task.join();
+				}
+			} catch (NoSuchFileException e) {
+				walk.missing(path, true);
+				return true;
+			} catch (IOException | SecurityException e) {
+				walk.fail(path, e);
+				complete = false;
+			}
+			if (!complete) {
+				walk.skip(path);
+				return false;
+			}
+			return walk.deleteOne(parent, path, true);
+		}
+
+		private DirectoryStream<Path> open() throws IOException {
+			if (parent != null) {
+				// fails rather than follows if the directory was replaced by a link
+				return parent.newDirectoryStream(path.getFileName(), LinkOption.NOFOLLOW_LINKS);
+			}
+			BasicFileAttributes before = Files.readAttributes(path, BasicFileAttributes.class,
+					LinkOption.NOFOLLOW_LINKS);
+			if (!before.isDirectory()) {
+				throw new NotDirectoryException(path.toString());
+			}
+			DirectoryStream<Path> stream = Files.newDirectoryStream(path);
+			BasicFileAttributes after;
+			try {
+				after = stream instanceof SecureDirectoryStream
+						? ((SecureDirectoryStream<Path>) stream).getFileAttributeView(BasicFileAttributeView.class)
+								.readAttributes()
+						: Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (IOException | RuntimeException e) {
+				stream.close();
+				throw e;
+			}
+			if (!after.isDirectory() || !Objects.equals(before.fileKey(), after.fileKey())) {
+				stream.close();
+				throw new FileSystemException(path.toString(), null, "Replaced while being opened");
+			}
+			return stream;
+		}
+
+		private static boolean isDirectory(SecureDirectoryStream<Path> secure, Path entry) {
+			if (secure == null) {
+				return Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS);
+			}
+			try {
+				return secure.getFileAttributeView(entry.getFileName(), BasicFileAttributeView.class,
+						LinkOption.NOFOLLOW_LINKS).readAttributes().isDirectory();
+			} catch (IOException e) {
+				// gone or unreadable: deleting it as a file reports which
+				return false;
+			}
+		}
+	}
+
+	// deletes files listed by a DeleteTask, relative to its open directory when there is one
+	private static final class FileBatch extends RecursiveTask<Boolean> {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Walk walk;
+		private final transient List<Path> files;
+		private final transient SecureDirectoryStream<Path> parent;
+
+		FileBatch(Walk walk, List<Path> files, SecureDirectoryStream<Path> parent) {
+			this.walk = walk;
+			this.files = files;
+			this.parent = parent;
+		}
+
+		@Override
+		protected Boolean compute() {
+			return deleteAll(walk, files, parent);
+		}
+
+		static boolean deleteAll(Walk walk, List<Path> files, SecureDirectoryStream<Path> parent) {
+			boolean complete = true;
+			for (Path file : files) {
+				complete &= walk.deleteOne(parent, file, false);
+			}
+			return complete;
+		}
+	}
+}